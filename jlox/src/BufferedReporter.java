@@ -0,0 +1,45 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds on to compile errors instead of printing them, for work done ahead of
+ * 	time or on other threads whose errors only count if its result is used.
+ */
+final class BufferedReporter extends ErrorReporter {
+	private final List<Error> errors = new ArrayList<>();
+
+	private static final class Error {
+		final int line;
+		final String where;
+		final String message;
+
+		Error(int line, String where, String message) {
+			this.line = line;
+			this.where = where;
+			this.message = message;
+		}
+	}
+
+	BufferedReporter() {
+		super(null);
+	}
+
+	@Override
+	boolean hadError() {
+		return !errors.isEmpty();
+	}
+
+	@Override
+	void report(int line, String where, String message) {
+		errors.add(new Error(line, where, message));
+	}
+
+	// Reports the errors held so far to the given reporter, in order.
+	void replay(ErrorReporter reporter) {
+		for (Error error : errors) {
+			reporter.report(error.line, error.where, error.message);
+		}
+	}
+}
@@ -1,67 +1,130 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The global variables, looked up by name. Locals live in {@link Frame}s.
+ */
 class Environment {
-	public final Environment enclosing;
-	private final Map<String, Object> values = new HashMap<>();
+	// Fibers share the globals, so the variables live in a concurrent map. It
+	// 	can't hold null, which nil is stored as instead.
+	private static final Object NIL = new Object();
+
+	private final Map<String, Object> values = new ConcurrentHashMap<>();
+	// Bumped whenever a function is rebound, which memoized results may
+	// 	depend on.
+	private final AtomicLong functionsVersion = new AtomicLong();
 
 	/**
-	 * Global top-level environment's constructor 
+	 * Live view of the variables defined in this environment, used to expose
+	 * 	the globals as script bindings.
 	 */
-	public Environment() {
-		enclosing = null;
-	}
-
-	public Environment(Environment enclosing) {
-		this.enclosing = enclosing;
+	Map<String, Object> values() {
+		return new Values();
 	}
 
 	public Object get(Token name) {
-		if (values.containsKey(name.lexeme)) {
-			return values.get(name.lexeme);
-		}
+		Object value = values.get(name.lexeme);
 
-		if (enclosing == null) {
+		if (value == null) {
 			throw new RuntimeError(name, "Undefined variable '" + name.lexeme +"'.");
 		}
 
-		return enclosing.get(name);
+		return unmask(value);
 	}
 
-	public Object getAt(int distance, String name) {
-		return ancestor(distance).values.get(name);
+	public void define(String name, Object value) {
+		rebound(values.put(name, mask(value)), value);
 	}
 
-	public void assignAt(int distance, Token name, Object value) {
-		ancestor(distance).values.put(name.lexeme, value);
+	public void assign(Token name, Object value) {
+		Object previous = values.replace(name.lexeme, mask(value));
+
+		if (previous == null) {
+			throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+		}
+
+		rebound(previous, value);
 	}
 
-	public Environment ancestor(int distance) {
-		Environment environment = this;
+	long functionsVersion() {
+		return functionsVersion.get();
+	}
 
-		for (int i = 0; i < distance; i++) {
-			environment = environment.enclosing;
+	private void rebound(Object previous, Object value) {
+		if (previous instanceof LoxFunction || (previous != null && value instanceof LoxFunction)) {
+			functionsVersion.incrementAndGet();
 		}
+	}
 
-		return environment;
+	private static Object mask(Object value) {
+		return value == null ? NIL : value;
 	}
 
-	public void define(String name, Object value) {
-		values.put(name, value);
+	private static Object unmask(Object value) {
+		return value == NIL ? null : value;
 	}
 
-	public void assign(Token name, Object value) {
-		if (values.containsKey(name.lexeme)) {
-			values.put(name.lexeme, value);
-			return;
+	private final class Values extends AbstractMap<String, Object> {
+		@Override
+		public Object get(Object name) {
+			return unmask(values.get(name));
 		}
-		
-		if (enclosing == null) {
-			throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+
+		@Override
+		public boolean containsKey(Object name) {
+			return values.containsKey(name);
+		}
+
+		@Override
+		public Object put(String name, Object value) {
+			Object previous = values.put(name, mask(value));
+			rebound(previous, value);
+			return unmask(previous);
+		}
+
+		@Override
+		public Object remove(Object name) {
+			return unmask(values.remove(name));
 		}
 
-		enclosing.assign(name, value);
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			return new AbstractSet<Map.Entry<String, Object>>() {
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					Iterator<Map.Entry<String, Object>> entries = values.entrySet().iterator();
+
+					return new Iterator<Map.Entry<String, Object>>() {
+						@Override
+						public boolean hasNext() {
+							return entries.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, Object> next() {
+							Map.Entry<String, Object> entry = entries.next();
+							return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), unmask(entry.getValue()));
+						}
+
+						@Override
+						public void remove() {
+							entries.remove();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return values.size();
+				}
+			};
+		}
 	}
 }
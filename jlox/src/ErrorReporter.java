@@ -0,0 +1,74 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+
+/**
+ * Collects the static and runtime errors of one evaluation, so that
+ * 	evaluations running side by side don't trip each other's error flags.
+ */
+class ErrorReporter {
+	private final PrintWriter err;
+	private volatile boolean hadError = false;
+	private volatile boolean hadRuntimeError = false;
+
+	ErrorReporter(PrintWriter err) {
+		this.err = err;
+	}
+
+	boolean hadError() {
+		return hadError;
+	}
+
+	boolean hadRuntimeError() {
+		return hadRuntimeError;
+	}
+
+	// Reset the error flags in REPL mode as to not brick the execution
+	void reset() {
+		hadError = false;
+		hadRuntimeError = false;
+	}
+
+	void error(int line, String message) {
+		report(line, "", message);
+	}
+
+	void error(Token token, String message) {
+		if (token.type == TokenType.EOF) {
+			report(token.line, " at end", message);
+		} else {
+			report(token.line, " at '" + token.lexeme + "'", message);
+		}
+	}
+
+	void report(int line, String where, String message) {
+		err.println("[line " + line + "] Error" + where + ": " + message);
+		err.flush();
+		hadError = true;
+	}
+
+	// Messages that aren't errors, such as watch mode's reloads.
+	void note(String message) {
+		err.println(message);
+		err.flush();
+	}
+
+	void runtimeError(RuntimeError error) {
+		LoxEvents.RuntimeError event = new LoxEvents.RuntimeError();
+		if (event.isEnabled()) {
+			event.message = error.getMessage();
+			event.line = error.token == null ? -1 : error.token.line;
+			event.commit();
+		}
+
+		// Errors of natives a host called directly have no line.
+		if (error.token == null) {
+			err.println(error.getMessage());
+		} else {
+			err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+		}
+
+		err.flush();
+		hadRuntimeError = true;
+	}
+}
@@ -0,0 +1,111 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the steps, wall-clock time and memory an evaluation may use, so
+ * 	that a host can run scripts it doesn't trust without a thread or process
+ * 	to kill per script. A step is a loop iteration or a Lox function call.
+ *
+ * Interpreters don't check the limits on every step, only at safepoints: each
+ * 	one counts steps down, and every {@link #POLL_INTERVAL} steps adds them to
+ * 	the evaluation's {@link Meter}, which reads the clock and the thread's
+ * 	allocation counter. Time and allocations can overshoot their budget by
+ * 	what a script does in that many steps, the step budget can't.
+ */
+final class ExecutionBudget {
+	static final int POLL_INTERVAL = 1024;
+	static final ExecutionBudget UNLIMITED = new ExecutionBudget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+	private static final com.sun.management.ThreadMXBean threads = allocationCounter();
+
+	final long steps;
+	final long nanos;
+	final long allocatedBytes;
+
+	private ExecutionBudget(long steps, long nanos, long allocatedBytes) {
+		this.steps = steps;
+		this.nanos = nanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	ExecutionBudget withSteps(long steps) {
+		return new ExecutionBudget(steps, nanos, allocatedBytes);
+	}
+
+	ExecutionBudget withNanos(long nanos) {
+		return new ExecutionBudget(steps, nanos, allocatedBytes);
+	}
+
+	ExecutionBudget withAllocatedBytes(long allocatedBytes) {
+		return new ExecutionBudget(steps, nanos, allocatedBytes);
+	}
+
+	boolean isUnlimited() {
+		return steps == Long.MAX_VALUE && nanos == Long.MAX_VALUE && allocatedBytes == Long.MAX_VALUE;
+	}
+
+	// Starts the clock for an evaluation.
+	Meter start() {
+		return new Meter();
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads;
+			}
+		}
+
+		// Allocations aren't limited on JVMs that don't count them.
+		return null;
+	}
+
+	// Bytes allocated by the current thread so far, or -1 if not counted.
+	static long threadAllocatedBytes() {
+		return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * What one evaluation has used, shared by the interpreters of its fibers
+	 * 	and parallel workers.
+	 */
+	final class Meter {
+		private final AtomicLong steps = new AtomicLong();
+		private final AtomicLong allocatedBytes = new AtomicLong();
+		private final long deadline;
+
+		private Meter() {
+			this.deadline = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + nanos;
+		}
+
+		/**
+		 * Adds what an interpreter used since its last poll and fails if the
+		 * 	evaluation is over budget. Returns the number of steps until the
+		 * 	next poll.
+		 */
+		int poll(Token at, int steps, long allocatedBytes) {
+			long used = this.steps.addAndGet(steps);
+
+			if (used > ExecutionBudget.this.steps) {
+				throw new RuntimeError(at, "Step budget exceeded.");
+			}
+
+			if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+				throw new RuntimeError(at, "Time budget exceeded.");
+			}
+
+			if (allocatedBytes > 0 && this.allocatedBytes.addAndGet(allocatedBytes) > ExecutionBudget.this.allocatedBytes) {
+				throw new RuntimeError(at, "Allocation budget exceeded.");
+			}
+
+			// Poll again right after the last step allowed.
+			return (int)Math.min(POLL_INTERVAL, ExecutionBudget.this.steps - used + 1);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The local variables of a function call, or of a top-level block, stored in
+ * 	the slots the {@link Resolver} gave them. Blocks nested in a function
+ * 	use slots of the function's frame rather than a frame of their own.
+ * 	Globals live in an {@link Environment} instead.
+ */
+final class Frame {
+	// Enough slots for most functions, so that pooled frames fit any caller.
+	static final int MIN_SLOTS = 8;
+
+	final Object[] slots;
+
+	Frame(int size) {
+		this.slots = new Object[size];
+		LoxMetrics.recordEnvironment();
+	}
+}
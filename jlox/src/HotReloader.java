@@ -0,0 +1,333 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Watch mode: reloads the functions and classes of a running script when its
+ * 	file, or the file of a module it imports, changes. Only the changed file
+ * 	is compiled again. Its top-level declarations are compared with the
+ * 	previous version token by token, so whitespace and comments don't count,
+ * 	and only the changed ones are rebound, on a fork of the live interpreter:
+ *
+ * - A changed function replaces the global function of the same name.
+ * - A changed class keeps its {@link LoxClass}, so existing instances see
+ * 	the change, and only the changed methods are swapped. A class whose
+ * 	superclass changed is replaced by a new class.
+ *
+ * Other top-level code doesn't run again, so variables keep their values, and
+ * 	declarations removed from the file stay defined.
+ */
+final class HotReloader {
+	private final Interpreter interpreter;
+	private final ErrorReporter reporter;
+	private final boolean lazyFunctions;
+	private final WatchService watcher;
+	private final Set<Path> directories = new HashSet<>();
+	// The fingerprints of each watched file's declarations, by name.
+	private final Map<Path, Map<String, String>> fingerprints = new HashMap<>();
+
+	HotReloader(Interpreter interpreter, ErrorReporter reporter, boolean lazyFunctions) throws IOException {
+		this.interpreter = interpreter;
+		this.reporter = reporter;
+		this.lazyFunctions = lazyFunctions;
+		this.watcher = FileSystems.getDefault().newWatchService();
+	}
+
+	/**
+	 * Starts watching the script, which must be the one the interpreter runs,
+	 * 	on a thread of its own.
+	 */
+	void start(Path script) throws IOException {
+		watch(script.toAbsolutePath().normalize());
+
+		Thread thread = new Thread(this::run, "lox-watch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void watch(Path file) throws IOException {
+		if (fingerprints.containsKey(file)) {
+			return;
+		}
+
+		List<Token> tokens = scan(read(file));
+		fingerprints.put(file, fingerprint(tokens));
+
+		Path directory = file.getParent();
+
+		if (directories.add(directory)) {
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+
+		for (Path module : imports(tokens, directory)) {
+			watch(module);
+		}
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				Path directory = (Path)key.watchable();
+				Set<Path> changed = new HashSet<>();
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.context() instanceof Path) {
+						changed.add(directory.resolve((Path)event.context()));
+					}
+				}
+
+				key.reset();
+
+				for (Path file : changed) {
+					if (fingerprints.containsKey(file)) {
+						reload(file);
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Stop watching.
+		}
+	}
+
+	private void reload(Path file) {
+		String source;
+
+		try {
+			source = read(file);
+		} catch (IOException e) {
+			// Editors may replace a file in several steps.
+			return;
+		}
+
+		BufferedReporter errors = new BufferedReporter();
+		Program program = LoxEngine.compile(source, errors, lazyFunctions, file.getParent());
+
+		if (program == null) {
+			errors.replay(reporter);
+			reporter.note("Not reloading " + file + ", it has errors.");
+			return;
+		}
+
+		List<Token> tokens = scan(source);
+		Map<String, String> previous = fingerprints.get(file);
+		Map<String, String> current = fingerprint(tokens);
+		Interpreter fork = interpreter.fork();
+		List<String> reloaded = new ArrayList<>();
+
+		try {
+			for (Stmt statement : program.statements) {
+				if (statement instanceof Stmt.Function) {
+					Stmt.Function function = (Stmt.Function)statement;
+
+					if (changed(function.name.lexeme, previous, current)) {
+						fork.run(List.of(function));
+						reloaded.add(function.name.lexeme);
+					}
+				} else if (statement instanceof Stmt.Class) {
+					Stmt.Class klass = (Stmt.Class)statement;
+
+					if (changed(klass.name.lexeme, previous, current)) {
+						reloadClass(fork, klass, previous, current);
+						reloaded.add(klass.name.lexeme);
+					}
+				}
+			}
+		} catch (RuntimeError error) {
+			reporter.runtimeError(error);
+		}
+
+		fingerprints.put(file, current);
+
+		try {
+			for (Path module : imports(tokens, file.getParent())) {
+				watch(module);
+			}
+		} catch (IOException e) {
+			reporter.note("Can't watch the modules of " + file + ": " + e.getMessage());
+		}
+
+		if (!reloaded.isEmpty()) {
+			reporter.note("Reloaded " + String.join(", ", reloaded) + " from " + file + ".");
+		}
+	}
+
+	private void reloadClass(Interpreter fork, Stmt.Class stmt, Map<String, String> previous, Map<String, String> current) {
+		String name = stmt.name.lexeme;
+		LoxClass superclass = fork.superclass(stmt);
+		LoxClass reloaded = fork.createClass(stmt, superclass);
+		Object existing = interpreter.globals.values().get(name);
+
+		if (!(existing instanceof LoxClass) || ((LoxClass)existing).superclass != superclass) {
+			interpreter.globals.define(name, reloaded);
+			return;
+		}
+
+		LoxClass klass = (LoxClass)existing;
+		klass.reload(reloaded, unchanged(stmt.methods, name + ".", previous, current));
+		klass.metaclass().reload(reloaded.metaclass(), unchanged(stmt.statics, name + ".class ", previous, current));
+	}
+
+	private static Set<String> unchanged(List<Stmt.Function> methods, String prefix, Map<String, String> previous, Map<String, String> current) {
+		Set<String> unchanged = new HashSet<>();
+
+		for (Stmt.Function method : methods) {
+			if (!changed(prefix + method.name.lexeme, previous, current)) {
+				unchanged.add(method.name.lexeme);
+			}
+		}
+
+		return unchanged;
+	}
+
+	private static boolean changed(String name, Map<String, String> previous, Map<String, String> current) {
+		return !Objects.equals(previous.get(name), current.get(name));
+	}
+
+	/**
+	 * The lexemes of each top-level function and class, keyed by name, and of
+	 * 	each method, keyed by "Class.method" or "Class.class method".
+	 */
+	private static Map<String, String> fingerprint(List<Token> tokens) {
+		Map<String, String> fingerprints = new HashMap<>();
+		int depth = 0;
+
+		for (int i = 0; i < tokens.size(); i++) {
+			TokenType type = tokens.get(i).type;
+
+			if (depth == 0 && (type == TokenType.FUN || type == TokenType.CLASS) && isIdentifier(tokens, i + 1)) {
+				int end = closingBrace(tokens, i);
+
+				if (end == -1) {
+					break;
+				}
+
+				String name = tokens.get(i + 1).lexeme;
+				fingerprints.put(name, lexemes(tokens, i, end));
+
+				if (type == TokenType.CLASS) {
+					fingerprintMethods(tokens, name, i, end, fingerprints);
+				}
+
+				i = end;
+			} else if (type == TokenType.LEFT_BRACE) {
+				depth++;
+			} else if (type == TokenType.RIGHT_BRACE) {
+				depth--;
+			}
+		}
+
+		return fingerprints;
+	}
+
+	private static void fingerprintMethods(List<Token> tokens, String klass, int start, int end, Map<String, String> fingerprints) {
+		int i = start;
+
+		while (tokens.get(i).type != TokenType.LEFT_BRACE) {
+			i++;
+		}
+
+		for (i++; i < end; i++) {
+			String prefix = klass + ".";
+			int method = i;
+
+			if (tokens.get(i).type == TokenType.CLASS) {
+				prefix = klass + ".class ";
+				method++;
+			}
+
+			if (!isIdentifier(tokens, method)) {
+				continue;
+			}
+
+			int methodEnd = closingBrace(tokens, method);
+
+			if (methodEnd == -1 || methodEnd > end) {
+				return;
+			}
+
+			fingerprints.put(prefix + tokens.get(method).lexeme, lexemes(tokens, i, methodEnd));
+			i = methodEnd;
+		}
+	}
+
+	// The index of the brace closing the first block at or after start, or -1.
+	private static int closingBrace(List<Token> tokens, int start) {
+		int depth = 0;
+
+		for (int i = start; i < tokens.size(); i++) {
+			TokenType type = tokens.get(i).type;
+
+			if (type == TokenType.LEFT_BRACE) {
+				depth++;
+			} else if (type == TokenType.RIGHT_BRACE && --depth == 0) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static boolean isIdentifier(List<Token> tokens, int i) {
+		return i < tokens.size() && tokens.get(i).type == TokenType.IDENTIFIER;
+	}
+
+	private static String lexemes(List<Token> tokens, int start, int end) {
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = start; i <= end; i++) {
+			builder.append(tokens.get(i).lexeme).append(' ');
+		}
+
+		return builder.toString();
+	}
+
+	// The files of the modules imported at the top level.
+	private static List<Path> imports(List<Token> tokens, Path directory) {
+		List<Path> modules = new ArrayList<>();
+		int depth = 0;
+
+		for (int i = 0; i + 1 < tokens.size(); i++) {
+			Token token = tokens.get(i);
+
+			if (token.type == TokenType.LEFT_BRACE) {
+				depth++;
+			} else if (token.type == TokenType.RIGHT_BRACE) {
+				depth--;
+			} else if (depth == 0 && token.type == TokenType.IMPORT && tokens.get(i + 1).type == TokenType.STRING) {
+				try {
+					modules.add(directory.resolve((String)tokens.get(i + 1).literal).toAbsolutePath().normalize());
+				} catch (InvalidPathException e) {
+					// Compiling the script reports it.
+				}
+			}
+		}
+
+		return modules;
+	}
+
+	private static List<Token> scan(String source) {
+		return ParallelScanner.scanTokens(source, new BufferedReporter());
+	}
+
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), Charset.defaultCharset());
+	}
+}
@@ -3,15 +3,69 @@ package com.craftinginterpreters.lox;
 import java.lang.Class;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-	final Environment globals = new Environment();
-	private Environment environment = globals;
-	private final Map<Expr, Integer> locals = new HashMap<>();
+	// Recycled frames kept per interpreter. Deeper recursion allocates.
+	private static final int FRAME_POOL_SIZE = 256;
+	private static final Upvalue[] NO_UPVALUES = new Upvalue[0];
+
+	final Environment globals;
+	// The innermost local scope, null in top-level code.
+	private Frame frame;
+	// The upvalues of the function being executed.
+	private Upvalue[] upvalues = NO_UPVALUES;
+	final ErrorReporter reporter;
+	private final OutputSink out;
+	private final Return returnValue = new Return();
+	// Modules whose code has run, shared with forks.
+	private final Set<Module> imported;
+	// The modules the imports of the program being run load.
+	private Map<Stmt.Import, Module> modules = Map.of();
+	// Fibers spawned by the evaluation, shared with forks, whose errors are
+	// 	reported if the script never awaits them.
+	private final Queue<LoxFiber> fibers;
+	// The parenthesis of the native call in progress, for the natives' errors.
+	// 	Null when a host calls a native directly.
+	Token callSite = null;
+
+	private final Frame[] framePool = new Frame[FRAME_POOL_SIZE];
+	private int pooledFrames = 0;
+
+	// Every Lox call nests several Java frames, so the Lox call depth is bounded
+	// 	both explicitly and by the size of the thread's stack.
+	int maxCallDepth = Integer.MAX_VALUE;
+	private int callDepth = 0;
+
+	// Results cached per pure function, zero to not memoize.
+	int memoCapacity = 0;
+
+	// The operand types of the run's operations, shared with forks, or null
+	// 	when not profiling.
+	TypeProfile profile = null;
+
+	// The evaluation's budget, shared with forks, or null if unlimited. Each
+	// 	interpreter polls it at its own safepoints, the first one right away.
+	ExecutionBudget.Meter budget = null;
+	private int stepsUntilPoll = 1;
+	private int pollInterval = 1;
+	// This thread's allocation counter at the last poll, -1 before the first.
+	private long allocatedBytes = -1;
+
+	public Interpreter(ErrorReporter reporter, OutputSink out) {
+		this.globals = new Environment();
+		this.frame = null;
+		this.reporter = reporter;
+		this.out = out;
+		this.imported = new HashSet<>();
+		this.fibers = new ConcurrentLinkedQueue<>();
 
-	public Interpreter() {
 		globals.define("clock", new LoxCallable() {
 			@Override
 			public int arity() { return 0; }
@@ -24,16 +78,172 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			@Override
 			public String toString() { return "<native fn>"; }
 		});
+
+		globals.define("Array", new LoxNative("Array", 0) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				return new LoxArray();
+			}
+		});
+
+		globals.define("Map", new LoxNative("Map", 0) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				return new LoxMap();
+			}
+		});
+
+		globals.define("spawn", new LoxNative("spawn", 1) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				Object function = arguments.get(0);
+
+				if (!(function instanceof LoxCallable) || ((LoxCallable)function).arity() != 0) {
+					throw new RuntimeError(interpreter.callSite, "Can only spawn functions that take no arguments.");
+				}
+
+				LoxFiber fiber = LoxFiber.spawn(interpreter, (LoxCallable)function);
+				interpreter.fibers.add(fiber);
+				return fiber;
+			}
+		});
+
+		globals.define("await", new LoxNative("await", 1) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				if (!(arguments.get(0) instanceof LoxFiber)) {
+					throw new RuntimeError(interpreter.callSite, "Can only await fibers.");
+				}
+
+				return ((LoxFiber)arguments.get(0)).await(interpreter.callSite);
+			}
+		});
+
+		globals.define("Channel", new LoxNative("Channel", 1) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				Object capacity = arguments.get(0);
+
+				if (!(capacity instanceof Double) || (double)capacity < 0 || (double)capacity != Math.floor((double)capacity)) {
+					throw new RuntimeError(interpreter.callSite, "Channel capacity must be a non-negative integer.");
+				}
+
+				return new LoxChannel((int)(double)capacity);
+			}
+		});
+
+		LoxParallel.define(globals);
+	}
+
+	// Forks an interpreter for a fiber: same globals and sinks, but its own
+	// 	current scope.
+	private Interpreter(Interpreter parent) {
+		this.globals = parent.globals;
+		this.frame = null;
+		this.upvalues = NO_UPVALUES;
+		this.reporter = parent.reporter;
+		this.out = parent.out;
+		this.maxCallDepth = parent.maxCallDepth;
+		this.memoCapacity = parent.memoCapacity;
+		this.budget = parent.budget;
+		this.profile = parent.profile;
+		this.imported = parent.imported;
+		this.modules = parent.modules;
+		this.fibers = parent.fibers;
+	}
+
+	Interpreter fork() {
+		return new Interpreter(this);
 	}
 
-	public void interpret (List<Stmt> statements) {
+	public void interpret (Program program) {
+		out.start();
+
 		try {
-			for (Stmt statement : statements) {
+			run(program);
+		} catch (RuntimeError error) {
+			// Whatever was printed before the error comes first.
+			out.flush();
+			reporter.runtimeError(error);
+		} finally {
+			out.finish();
+			reportUnawaitedFibers();
+		}
+	}
+
+	// Reports the errors of the fibers the script didn't await, now for those
+	// 	that already failed and as they fail for the others.
+	private void reportUnawaitedFibers() {
+		LoxFiber fiber;
+
+		while ((fiber = fibers.poll()) != null) {
+			fiber.reportUnawaitedError(reporter);
+		}
+	}
+
+	// Starts an evaluation, limited by the given budget.
+	void startBudget(ExecutionBudget limits) {
+		budget = limits.isUnlimited() ? null : limits.start();
+		stepsUntilPoll = 1;
+		pollInterval = 1;
+		allocatedBytes = -1;
+	}
+
+	/**
+	 * Counts a step, at a loop's back edge or a function's entry, and checks
+	 * 	the budget and whether the thread was interrupted every so many steps.
+	 */
+	void safepoint(Token at) {
+		if (--stepsUntilPoll == 0) {
+			poll(at);
+		}
+	}
+
+	private void poll(Token at) {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new RuntimeError(at, "Interrupted.");
+		}
+
+		if (budget == null) {
+			stepsUntilPoll = ExecutionBudget.POLL_INTERVAL;
+			return;
+		}
+
+		long allocated = ExecutionBudget.threadAllocatedBytes();
+		long delta = allocatedBytes == -1 || allocated == -1 ? 0 : allocated - allocatedBytes;
+		allocatedBytes = allocated;
+
+		pollInterval = budget.poll(at, pollInterval, delta);
+		stepsUntilPoll = pollInterval;
+	}
+
+	void flush() {
+		out.flush();
+	}
+
+	/**
+	 * Executes statements without reporting runtime errors, for embedders that
+	 * 	want the error itself. Returns the value of the last statement if it is
+	 * 	an expression statement.
+	 */
+	Object run(Program program) {
+		modules = program.modules;
+		return run(program.statements);
+	}
+
+	Object run(List<Stmt> statements) {
+		Object value = null;
+
+		for (Stmt statement : statements) {
+			if (statement instanceof Stmt.Expression) {
+				value = evaluate(((Stmt.Expression)statement).expression);
+			} else {
 				execute(statement);
+				value = null;
 			}
-		} catch (RuntimeError error) {
-			Lox.runtimeError(error);
 		}
+
+		return value;
 	}
 
 	@Override
@@ -77,10 +287,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitSuperExpr(Expr.Super expr) {
-		int distance = locals.get(expr);
-		LoxClass superclass = (LoxClass)environment.getAt(distance, "super");
+		LoxClass superclass = (LoxClass)lookupVariable(expr.keyword, expr.slot, expr.upvalue);
 
-		LoxInstance object = (LoxInstance)environment.getAt(distance - 1, "this");
+		LoxInstance object = (LoxInstance)evaluate(expr.receiver);
 
 		LoxFunction method = superclass.findMethod(expr.method.lexeme);
 
@@ -93,7 +302,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitThisExpr(Expr.This expr) {
-		return lookupVariable(expr.keyword, expr);
+		return lookupVariable(expr.keyword, expr.slot, expr.upvalue);
 	}
 
 	@Override
@@ -109,7 +318,17 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			case BANG:
 				return !isTruthy(right);
 			case MINUS:
-				checkOperandType(Double.class, expr.operator, right);
+				if (!expr.numeric) {
+					boolean number = right instanceof Double;
+
+					if (profile == null) {
+						checkNumberOperand(expr.operator, right);
+					} else if (!(number && profile.isSpeculated(expr, expr.operation))) {
+						profile.observe(expr, expr.operation, number);
+						checkNumberOperand(expr.operator, right);
+					}
+				}
+
 				return -(double)right;
 		}
 
@@ -119,24 +338,89 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override
 	public Object visitVariableExpr(Expr.Variable expr) {
-		return lookupVariable(expr.name, expr);
+		return lookupVariable(expr.name, expr.slot, expr.upvalue);
 	}
 
-	private Object lookupVariable(Token name, Expr expr) {
-		Integer distance = locals.get(expr);
+	private Object lookupVariable(Token name, int slot, int upvalue) {
+		LoxMetrics.recordLookup(slot == -1 && upvalue == -1);
 
-		if (distance != null) {
-			return environment.getAt(distance, name.lexeme);
+		if (upvalue != -1) {
+			return upvalues[upvalue].value;
+		}
+
+		if (slot != -1) {
+			Object value = frame.slots[slot];
+			return value instanceof Upvalue ? ((Upvalue)value).value : value;
+		}
+
+		return globals.get(name);
+	}
+
+	// Declares a new variable, replacing any upvalue left in the slot by an
+	// 	earlier variable that a closure captured.
+	private void define(Token name, int slot, Object value) {
+		if (slot != -1) {
+			frame.slots[slot] = value;
+		} else {
+			globals.define(name.lexeme, value);
+		}
+	}
+
+	// Assigns to a local, through its upvalue if a closure captured it.
+	private static void store(Frame frame, int slot, Object value) {
+		Object current = frame.slots[slot];
+
+		if (current instanceof Upvalue) {
+			((Upvalue)current).value = value;
 		} else {
-			return globals.get(name);
+			frame.slots[slot] = value;
 		}
 	}
 
+	// Collects the upvalues of a closure created in the current scope, moving
+	// 	each captured local into an upvalue on first capture.
+	private Upvalue[] capture(Stmt.Function function) {
+		if (function.upvalueIndexes.length == 0) {
+			return NO_UPVALUES;
+		}
+
+		Upvalue[] captured = new Upvalue[function.upvalueIndexes.length];
+
+		for (int i = 0; i < captured.length; i++) {
+			int index = function.upvalueIndexes[i];
+
+			if (!function.upvalueIsLocal[i]) {
+				captured[i] = upvalues[index];
+			} else if (frame.slots[index] instanceof Upvalue) {
+				captured[i] = (Upvalue)frame.slots[index];
+			} else {
+				captured[i] = new Upvalue(frame.slots[index]);
+				frame.slots[index] = captured[i];
+			}
+		}
+
+		return captured;
+	}
+
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
 		Object left = evaluate(expr.left);
 		Object right = evaluate(expr.right);
 
+		if (expr.numeric) {
+			return numericBinary(expr.operator, (double)left, (double)right);
+		}
+
+		boolean numbers = left instanceof Double && right instanceof Double;
+
+		if (profile != null) {
+			if (numbers && profile.isSpeculated(expr, expr.operation)) {
+				return numericBinary(expr.operator, (double)left, (double)right);
+			}
+
+			profile.observe(expr, expr.operation, numbers);
+		}
+
 		switch (expr.operator.type) {
 			case COMMA:
 				return right;
@@ -145,40 +429,40 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			case EQUAL_EQUAL:
 				return isEqual(left, right);
 			case GREATER:
-				checkOperandType(Double.class, expr.operator, left, right);
+				checkNumberOperands(expr.operator, left, right);
 				return (double)left > (double)right;
 			case GREATER_EQUAL:
-				checkOperandType(Double.class, expr.operator, left, right);
+				checkNumberOperands(expr.operator, left, right);
 				return (double)left >= (double)right;
 			case LESS:
-				checkOperandType(Double.class, expr.operator, left, right);
+				checkNumberOperands(expr.operator, left, right);
 				return (double)left < (double)right;
 			case LESS_EQUAL:
-				checkOperandType(Double.class, expr.operator, left, right);
+				checkNumberOperands(expr.operator, left, right);
 				return (double)left <= (double)right;
 			case MINUS:
-				checkOperandType(Double.class, expr.operator, left, right);
+				checkNumberOperands(expr.operator, left, right);
 				return (double)left - (double)right;
 			case PLUS:
 				if (left instanceof Double && right instanceof Double) {
 					return (double)left + (double)right;
 				}
 
-				if (left instanceof String && right instanceof String) {
-					return (String)left + (String)right;
+				if (Rope.isString(left) && Rope.isString(right)) {
+					return Rope.concat((CharSequence)left, (CharSequence)right);
 				} 
 
-				if (left instanceof String && right instanceof Double) {
-					return (String)left + stringify(right);
+				if (Rope.isString(left) && right instanceof Double) {
+					return Rope.concat((CharSequence)left, stringify(right));
 				}
 
-				if (left instanceof Double && right instanceof String) {
-					return stringify(left) + (String)right;
+				if (left instanceof Double && Rope.isString(right)) {
+					return Rope.concat(stringify(left), (CharSequence)right);
 				}
 
 				throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
 			case SLASH:
-				checkOperandType(Double.class, expr.operator, left, right);
+				checkNumberOperands(expr.operator, left, right);
 
 				if ((double)right == 0.0) {
 					throw new RuntimeError(expr.operator, "Cannot divide by zero");
@@ -186,7 +470,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 				return (double)left / (double)right;
 			case STAR:
-				checkOperandType(Double.class, expr.operator, left, right);
+				checkNumberOperands(expr.operator, left, right);
 				return (double)left * (double)right;
 		}
 
@@ -197,17 +481,21 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Object visitCallExpr(Expr.Call expr) {
 		Object callee = evaluate(expr.callee);
 
+		if (callee instanceof LoxFunction && ((LoxFunction)callee).arity() == expr.arguments.size()) {
+			return callFunction((LoxFunction)callee, expr);
+		}
+
 		List<Object> arguments = new ArrayList<>();
 		for (Expr argument : expr.arguments) {
 			arguments.add(evaluate(argument));
 		}
 
-		LoxCallable function = (LoxCallable)callee;
-
 		if (!(callee instanceof LoxCallable)) {
 			throw new RuntimeError(expr.paren, "Can only call functions and classes.");
 		}
 
+		LoxCallable function = (LoxCallable)callee;
+
 		if (arguments.size() != function.arity()) {
 			throw new RuntimeError(
 				expr.paren,
@@ -215,18 +503,112 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			);
 		}
 
-		return function.call(this, arguments);
+		LoxMetrics.recordCall();
+		enterCall(expr.paren);
+		callSite = expr.paren;
+
+		try {
+			return function.call(this, arguments);
+		} catch (RuntimeError error) {
+			// Natives don't know where they were called from.
+			if (error.token == null) {
+				throw new RuntimeError(expr.paren, error.getMessage());
+			}
+
+			throw error;
+		} finally {
+			callDepth--;
+		}
+	}
+
+	// The arguments are evaluated straight into the callee's frame, so calling
+	// 	a Lox function doesn't build an argument list.
+	private Object callFunction(LoxFunction function, Expr.Call expr) {
+		Frame calleeFrame = function.newFrame(this);
+
+		try {
+			List<Expr> arguments = expr.arguments;
+
+			for (int i = 0; i < arguments.size(); i++) {
+				calleeFrame.slots[i] = evaluate(arguments.get(i));
+			}
+
+			LoxMetrics.recordCall();
+			enterCall(expr.paren);
+
+			try {
+				return function.call(this, calleeFrame);
+			} finally {
+				callDepth--;
+			}
+		} finally {
+			function.releaseFrame(this, calleeFrame);
+		}
+	}
+
+	private void enterCall(Token paren) {
+		if (callDepth == maxCallDepth) {
+			throw new RuntimeError(paren, "Stack overflow.");
+		}
+
+		callDepth++;
+	}
+
+	// Function frames can be recycled because closures capture upvalues rather
+	// 	than the frames themselves.
+	Frame acquireFrame(int size) {
+		if (pooledFrames > 0 && framePool[pooledFrames - 1].slots.length >= size) {
+			return framePool[--pooledFrames];
+		}
+
+		return new Frame(Math.max(size, Frame.MIN_SLOTS));
+	}
+
+	void releaseFrame(Frame released, int size) {
+		if (pooledFrames == FRAME_POOL_SIZE) {
+			return;
+		}
+
+		Arrays.fill(released.slots, 0, size, null);
+		framePool[pooledFrames++] = released;
 	}
 
 	@Override
 	public Object visitGetExpr(Expr.Get expr) {
 		Object object = evaluate(expr.object);
 
-		if (!(object instanceof LoxInstance)) {
+		if (!(object instanceof LoxObject)) {
 			throw new RuntimeError(expr.name, "Only instances have properties.");
 		}
 
-		return ((LoxInstance) object).get(expr.name);
+		return ((LoxObject) object).get(expr.name);
+	}
+
+	@Override
+	public Object visitIndexExpr(Expr.Index expr) {
+		Object object = evaluate(expr.object);
+		Object index = evaluate(expr.index);
+
+		if (object instanceof LoxIndexable) {
+			return ((LoxIndexable)object).getIndex(expr.bracket, index);
+		}
+
+		throw new RuntimeError(expr.bracket, "Only arrays and maps can be indexed.");
+	}
+
+	@Override
+	public Object visitIndexSetExpr(Expr.IndexSet expr) {
+		Object object = evaluate(expr.object);
+		Object index = evaluate(expr.index);
+
+		if (!(object instanceof LoxIndexable)) {
+			throw new RuntimeError(expr.bracket, "Only arrays and maps can be indexed.");
+		}
+
+		Object value = evaluate(expr.value);
+		((LoxIndexable)object).setIndex(expr.bracket, index, value);
+
+		return value;
 	}
 
 	// Because of right-associativity, I need to evaluate both branches, 
@@ -245,12 +627,45 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 	}
 	
-	private void checkOperandType(Class concreteType, Token operator, Object... operands) {
-		for (Object operand : operands) {
-			if (!concreteType.isInstance(operand)) {
-				throw new RuntimeError(operator, "Operand of incorrect type: " + operand + " should be of type " + concreteType.toString());	
-			}
+	// Operations the TypeInferrer proved, or a TypeProfile speculates, only
+	// 	ever see numbers.
+	private Object numericBinary(Token operator, double left, double right) {
+		switch (operator.type) {
+			case GREATER:
+				return left > right;
+			case GREATER_EQUAL:
+				return left >= right;
+			case LESS:
+				return left < right;
+			case LESS_EQUAL:
+				return left <= right;
+			case MINUS:
+				return left - right;
+			case PLUS:
+				return left + right;
+			case SLASH:
+				if (right == 0.0) {
+					throw new RuntimeError(operator, "Cannot divide by zero");
+				}
+
+				return left / right;
+			case STAR:
+				return left * right;
 		}
+
+		// Unreachable.
+		return null;
+	}
+
+	private void checkNumberOperand(Token operator, Object operand) {
+		if (!(operand instanceof Double)) {
+			throw new RuntimeError(operator, "Operand of incorrect type: " + operand + " should be of type " + Double.class);
+		}
+	}
+
+	private void checkNumberOperands(Token operator, Object left, Object right) {
+		checkNumberOperand(operator, left);
+		checkNumberOperand(operator, right);
 	}
 	
 	private Object evaluate(Expr expr) {
@@ -261,48 +676,97 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		stmt.accept(this);
 	}
 
-	public void resolve(Expr expr, int depth) {
-		locals.put(expr, depth);
-	}
-
-	public void executeBlock(List<Stmt> statements, Environment environment) {
-		Environment previous = this.environment;
+	public void executeBlock(List<Stmt> statements, Frame frame) {
+		Frame previous = this.frame;
 
 		try {
-			this.environment = environment;
+			this.frame = frame;
 
-			for (Stmt statement: statements) {
-				execute(statement);
+			for (int i = 0; i < statements.size(); i++) {
+				execute(statements.get(i));
 			}
 		} 
 		finally {
-			this.environment = previous;
+			this.frame = previous;
+		}
+	}
+
+	void executeFunction(List<Stmt> body, Frame frame, Upvalue[] upvalues) {
+		Upvalue[] previous = this.upvalues;
+
+		try {
+			this.upvalues = upvalues;
+			executeBlock(body, frame);
+		} finally {
+			this.upvalues = previous;
 		}
 	}
 
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
-		executeBlock(stmt.statements, new Environment(environment));
+		// Nested blocks declare their variables in the enclosing frame.
+		if (frame != null) {
+			List<Stmt> statements = stmt.statements;
+
+			for (int i = 0; i < statements.size(); i++) {
+				execute(statements.get(i));
+			}
+
+			return null;
+		}
+
+		Frame blockFrame = acquireFrame(stmt.locals);
+
+		try {
+			executeBlock(stmt.statements, blockFrame);
+		} finally {
+			releaseFrame(blockFrame, stmt.locals);
+		}
+
 		return null;
 	}
 
 	@Override
 	public Void visitClassStmt(Stmt.Class stmt) {
-		Object superclass = null;
+		LoxClass superclass = superclass(stmt);
+		define(stmt.name, stmt.slot, null);
+		LoxClass klass = createClass(stmt, superclass);
 
-		if (stmt.superclass != null) {
-			superclass = evaluate(stmt.superclass);
+		if (stmt.slot != -1) {
+			store(frame, stmt.slot, klass);
+		} else {
+			globals.assign(stmt.name, klass);
+		}
 
-			if (!(superclass instanceof LoxClass)) {
-				throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
-			}
+		return null;
+	}
+
+	// The class a declaration inherits from, null if none.
+	LoxClass superclass(Stmt.Class stmt) {
+		if (stmt.superclass == null) {
+			return null;
 		}
 
-		environment.define(stmt.name.lexeme, null);
+		Object superclass = evaluate(stmt.superclass);
+
+		if (!(superclass instanceof LoxClass)) {
+			throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
+		}
+
+		return (LoxClass)superclass;
+	}
+
+	// Creates the class a declaration defines, its methods closing over the
+	// 	current scope.
+	LoxClass createClass(Stmt.Class stmt, LoxClass superclass) {
+		Frame enclosing = frame;
 
 		if (stmt.superclass != null) {
-			environment = new Environment(environment);
-			environment.define("super", superclass);
+			if (frame == null) {
+				frame = new Frame(1);
+			}
+
+			frame.slots[stmt.superSlot] = superclass;
 		}
 
 		Map<String, LoxFunction> methods = new HashMap<>();
@@ -310,23 +774,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 		
 		for (Stmt.Function staticMethod : stmt.statics) {
-			LoxFunction function = new LoxFunction(staticMethod, environment, false);
+			LoxFunction function = new LoxFunction(staticMethod, capture(staticMethod), null, false);
 			statics.put(staticMethod.name.lexeme, function);
 		}
 		LoxClass metaclass = new LoxClass(null, "metaclass", null, statics);
 
 		for (Stmt.Function method : stmt.methods) {
-			LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
+			LoxFunction function = new LoxFunction(method, capture(method), null, method.name.lexeme.equals("init"));
 			methods.put(method.name.lexeme, function);
 		}
 
-		if (superclass != null) {
-			environment = environment.enclosing;
-		}
-		
-		environment.assign(stmt.name, new LoxClass(metaclass, stmt.name.lexeme, (LoxClass)superclass, methods));
+		frame = enclosing;
 
-		return null;
+		return new LoxClass(metaclass, stmt.name.lexeme, superclass, methods);
 	}
 
 	@Override
@@ -337,11 +797,28 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitFunctionStmt(Stmt.Function stmt) {
-		LoxFunction function = new LoxFunction(stmt, environment, false);
-		environment.define(stmt.name.lexeme, function);
+		if (stmt.slot == -1) {
+			globals.define(stmt.name.lexeme, newFunction(stmt));
+			return null;
+		}
+
+		// A fresh variable, declared before the closure is created so that the
+		// 	function can capture itself.
+		frame.slots[stmt.slot] = null;
+		store(frame, stmt.slot, newFunction(stmt));
 		return null;
 	}
 
+	private LoxFunction newFunction(Stmt.Function stmt) {
+		LoxFunction function = new LoxFunction(stmt, capture(stmt), null, false);
+
+		if (stmt.pure && memoCapacity > 0) {
+			function.memoize(memoCapacity);
+		}
+
+		return function;
+	}
+
 	@Override
 	public Void visitIfStmt(Stmt.If stmt) {
 		if (isTruthy(evaluate(stmt.condition))) {
@@ -353,10 +830,25 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	// A module runs the first time it's imported, in the global scope.
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		Module module = modules.get(stmt);
+
+		// Imports of the running script itself aren't linked.
+		if (module != null && imported.add(module)) {
+			for (Stmt statement : module.program.statements) {
+				execute(statement);
+			}
+		}
+
+		return null;
+	}
+
 	@Override
 	public Void visitPrintStmt (Stmt.Print stmt) {
 		Object value = evaluate(stmt.expression);
-		System.out.println(stringify(value));
+		out.println(value);
 		return null;
 	}
 
@@ -368,7 +860,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			value = evaluate(stmt.value);
 		}
 
-		throw new Return(value);
+		returnValue.value = value;
+		throw returnValue;
 	}
 
 	@Override
@@ -379,7 +872,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			value = evaluate(stmt.initializer);
 		}
 
-		environment.define(stmt.name.lexeme, value);
+		define(stmt.name, stmt.slot, value);
 		return null;
 	}
 
@@ -387,6 +880,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Void visitWhileStmt(Stmt.While stmt) {
 		while (isTruthy(evaluate(stmt.condition))) {
 			execute(stmt.body);
+			safepoint(stmt.keyword);
 		}
 
 		return null;
@@ -396,10 +890,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Object visitAssignExpr(Expr.Assign expr) {
 		Object value = evaluate(expr.value);
 
-		Integer distance = locals.get(expr);
-
-		if (distance != null) {
-			environment.assignAt(distance, expr.name, value);
+		if (expr.upvalue != -1) {
+			upvalues[expr.upvalue].value = value;
+		} else if (expr.slot != -1) {
+			store(frame, expr.slot, value);
 		} else {
 			globals.assign(expr.name, value);
 		}
@@ -407,7 +901,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return value;
 	}
 
-	private boolean isTruthy(Object object) {
+	static boolean isTruthy(Object object) {
 		if (object == null) {
 			return false;
 		}
@@ -420,7 +914,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	private boolean isEqual(Object a, Object b) {
-		if (a == null && b == null) {
+		// Interned literals take this path.
+		if (a == b) {
 			return true;
 		}
 
@@ -428,23 +923,25 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			return false;
 		}
 
-		return a.equals(b);
+		// Strings and ropes with the same text are the same Lox value.
+		return Rope.flatten(a).equals(Rope.flatten(b));
 	}
 
-	private String stringify(Object object) {
+	static String stringify(Object object) {
 		if (object == null) {
 			return "nil";
 		}
 
 		if (object instanceof Double) {
-			String text = object.toString();
+			double number = (double)object;
 
-			if (text.endsWith(".0")) {
-				text = text.substring(0, text.length() - 2);
+			if (OutputSink.isPlainInteger(number)) {
+				return Integer.toString((int)number);
 			}
 
-			return text;
-
+			// Only -0 is left to print without its ".0".
+			String text = object.toString();
+			return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
 		}
 
 		return object.toString();
@@ -0,0 +1,89 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tokens of a top-level function body that the {@link Parser} only
+ * 	brace-matched. The body is parsed, resolved and typed on the function's
+ * 	first call, and its statements are added to the declaration's then
+ * 	empty body.
+ *
+ * Top-level functions only see globals and their own locals, so resolving
+ * 	the body on its own, long after the code around it, binds it the same way.
+ * 	Errors in the body are only found when it's compiled, and are reported
+ * 	to every evaluation that calls it. Programs, and so bodies, may be shared
+ * 	by sessions.
+ */
+final class LazyBody {
+	// From the token after the opening brace to the closing brace.
+	private final List<Token> tokens;
+	private volatile boolean compiled = false;
+	private boolean failed = false;
+	private boolean parsed = false;
+	// The body's errors, kept apart from those of the code calling it.
+	private final BufferedReporter errors = new BufferedReporter();
+
+	LazyBody(List<Token> tokens) {
+		this.tokens = tokens;
+	}
+
+	boolean isParsed() {
+		return parsed;
+	}
+
+	void compile(Stmt.Function function, ErrorReporter reporter) {
+		if (!compiled) {
+			compileOnce(function, reporter);
+		}
+	}
+
+	private synchronized void compileOnce(Stmt.Function function, ErrorReporter reporter) {
+		if (compiled) {
+			return;
+		}
+
+		if (!failed) {
+			LoxEvents.Phase phase = LoxEvents.beginPhase("lazy-compile");
+			failed = !parseAndResolve(function);
+			LoxEvents.endPhase(phase);
+		}
+
+		if (failed) {
+			errors.replay(reporter);
+			throw new RuntimeError(function.name, "Can't call " + function.name.lexeme + "(), its body has errors.");
+		}
+
+		compiled = true;
+	}
+
+	// Whether the body compiled without errors.
+	private boolean parseAndResolve(Stmt.Function function) {
+		List<Token> body = new ArrayList<>(tokens.size() + 1);
+		body.addAll(tokens);
+		body.add(new Token(TokenType.EOF, "", null, tokens.get(tokens.size() - 1).line));
+
+		List<Stmt> statements = new Parser(body, errors).parseBody();
+
+		if (errors.hadError()) {
+			return false;
+		}
+
+		function.body.addAll(statements);
+		parsed = true;
+
+		// The body is checked for purity on its own, so it's only pure if the
+		// 	globals it calls are itself.
+		List<Stmt> declaration = List.of(function);
+		Resolver resolver = new Resolver(errors);
+		resolver.resolve(declaration);
+		resolver.analyzePurity();
+
+		if (errors.hadError()) {
+			return false;
+		}
+
+		new TypeInferrer().infer(declaration);
+		return true;
+	}
+}
@@ -5,93 +5,130 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.time.Duration;
+import java.util.Arrays;
 
 public class Lox {
-	static boolean hadError = false;
-	static boolean hadRuntimeError = false;
-	private static final Interpreter interpreter = new Interpreter();
+	private static boolean stats = false;
+	private static boolean watch = false;
+	private static boolean profile = false;
+	private static LoxEngine engine = new LoxEngine();
 
 	public static void main(String[] args) throws IOException {
 		System.out.println();
 
+		while (args.length > 0 && args[0].startsWith("--")) {
+			String option = args[0];
+			args = Arrays.copyOfRange(args, 1, args.length);
+
+			if (option.equals("--stats")) {
+				stats = true;
+			} else if (option.startsWith("--max-depth=")) {
+				engine = engine.withMaxCallDepth(Integer.parseInt(option.substring("--max-depth=".length())));
+			} else if (option.equals("--watch")) {
+				watch = true;
+			} else if (option.equals("--profile")) {
+				profile = true;
+			} else if (option.equals("--lazy")) {
+				engine = engine.withLazyFunctions(true);
+			} else if (option.startsWith("--memoize=")) {
+				engine = engine.withMemoization(Integer.parseInt(option.substring("--memoize=".length())));
+			} else if (option.startsWith("--step-budget=")) {
+				engine = engine.withStepBudget(Long.parseLong(option.substring("--step-budget=".length())));
+			} else if (option.startsWith("--time-budget=")) {
+				engine = engine.withTimeBudget(Duration.ofMillis(Long.parseLong(option.substring("--time-budget=".length()))));
+			} else if (option.startsWith("--alloc-budget=")) {
+				engine = engine.withAllocationBudget(parseSize(option.substring("--alloc-budget=".length())));
+			} else if (option.startsWith("--output-buffer=")) {
+				engine = engine.withOutputBuffer((int)parseSize(option.substring("--output-buffer=".length())));
+			} else {
+				usage();
+			}
+		}
+
+		if (stats || Boolean.getBoolean("lox.metrics")) {
+			LoxMetrics.enable();
+		}
+
 		if (args.length > 1) {
-			System.out.println("Usage: jlox [script]");
-			System.exit(64);
+			usage();
 		} else if (args.length ==  1) {
 			runFile(args[0]);
 		} else {
 			runPrompt();
 		}
-		
-	}
 
-	private static void runFile(String path) throws IOException {
-		byte[] bytes = Files.readAllBytes(Paths.get(path));
-		run(new String(bytes, Charset.defaultCharset()));
-		if (hadError) System.exit(65);
-		if (hadRuntimeError) System.exit(70);
+		dumpStats();
 	}
 
-	private static void runPrompt() throws IOException {
-		InputStreamReader input = new InputStreamReader(System.in);
-		BufferedReader reader = new BufferedReader(input);
+	private static void usage() {
+		System.out.println("Usage: jlox [--stats] [--max-depth=<calls>] [--output-buffer=<chars>[k|m]] [--lazy] [--profile] [--memoize=<entries>] [--step-budget=<steps>] [--time-budget=<ms>] [--alloc-budget=<bytes>[k|m]] [--watch] [script]");
+		System.exit(64);
+	}
 
-		while (true) {
-			System.out.print("jlox_repl> ");
-			String line = reader.readLine();
-			if (line == null) break;
-			run(line);
+	private static long parseSize(String size) {
+		long unit = 1;
 
-			// Reset the error flag in REPL mode as to not brick the execution
-			hadError = false;
-			hadRuntimeError = false;
+		if (size.endsWith("k") || size.endsWith("m")) {
+			unit = size.endsWith("k") ? 1024 : 1024 * 1024;
+			size = size.substring(0, size.length() - 1);
 		}
+
+		return Long.parseLong(size) * unit;
 	}
 
-	private static void run(String source) {
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.scanTokens();
-		Parser parser = new Parser(tokens);
-		List<Stmt> statements = parser.parse();
+	private static void runFile(String path) throws IOException {
+		Path file = Paths.get(path);
+		byte[] bytes = Files.readAllBytes(file);
+		LoxEngine.Session session = engine.newSession();
 
-		// Hack until we get error recovery / parser synchronization.
-		if (hadError) {
-			return;
+		if (watch) {
+			session.watch(file);
 		}
 
-		Resolver resolver = new Resolver(interpreter);
-		resolver.resolve(statements);
+		String source = new String(bytes, Charset.defaultCharset());
+		LoxEngine.Result result = profile
+			? endOutput(session.evalProfiled(source, file))
+			: endOutput(session.evalFile(source, file));
 
-		// Stop if thre was a resolution error.
-		if (hadError) {
-			return;
+		if (result != LoxEngine.Result.OK) {
+			dumpStats();
 		}
 
-		interpreter.interpret(statements);
-		System.out.println();
+		if (result == LoxEngine.Result.COMPILE_ERROR) System.exit(65);
+		if (result == LoxEngine.Result.RUNTIME_ERROR) System.exit(70);
 	}
 
-	static void error(int line, String message) {
-		report(line, "", message);
+	private static void dumpStats() {
+		if (stats) {
+			LoxMetrics.dump(System.err);
+		}
 	}
 
-	private static void report(int line, String where, String message) {
-		System.err.println("[line " + line + "] Error" + where + ": " + message);
-		hadError = true;
-	}
+	private static void runPrompt() throws IOException {
+		InputStreamReader input = new InputStreamReader(System.in);
+		BufferedReader reader = new BufferedReader(input);
+		LoxEngine.Session session = engine.newSession();
 
-	static void error(Token token, String message) {
-		if (token.type == TokenType.EOF) {
-			report(token.line, " at end", message);
-		} else {
-			report(token.line, " at '" + token.lexeme + "'", message);
+		while (true) {
+			System.out.print("jlox_repl> ");
+			String line = reader.readLine();
+			if (line == null) break;
+			run(session, line, Paths.get(""));
 		}
 	}
 
-	static void runtimeError(RuntimeError error) {
-		System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-		hadRuntimeError = true;
+	private static LoxEngine.Result run(LoxEngine.Session session, String source, Path directory) {
+		return endOutput(session.eval(source, directory));
+	}
+
+	private static LoxEngine.Result endOutput(LoxEngine.Result result) {
+		if (result != LoxEngine.Result.COMPILE_ERROR) {
+			System.out.println();
+		}
+
+		return result;
 	}
 }
@@ -0,0 +1,186 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Native growable array. Elements are kept unboxed in a {@code double[]}
+ * 	for as long as the array only ever held numbers, and moved to an
+ * 	{@code Object[]} the first time anything else is stored.
+ */
+final class LoxArray implements LoxIndexable, LoxObject {
+	private static final int MIN_CAPACITY = 8;
+
+	// Exactly one of these is non-null.
+	private double[] numbers;
+	private Object[] values;
+	private int count;
+
+	LoxArray() {
+		this.numbers = new double[MIN_CAPACITY];
+	}
+
+	private LoxArray(double[] numbers, Object[] values, int count) {
+		this.numbers = numbers;
+		this.values = values;
+		this.count = count;
+	}
+
+	/**
+	 * Builds an array holding the given values, unboxed if they are all numbers.
+	 */
+	static LoxArray of(Object[] elements, int count) {
+		for (int i = 0; i < count; i++) {
+			if (!(elements[i] instanceof Double)) {
+				Object[] values = Arrays.copyOf(elements, Math.max(count, MIN_CAPACITY));
+				return new LoxArray(null, values, count);
+			}
+		}
+
+		double[] numbers = new double[Math.max(count, MIN_CAPACITY)];
+
+		for (int i = 0; i < count; i++) {
+			numbers[i] = (double)elements[i];
+		}
+
+		return new LoxArray(numbers, null, count);
+	}
+
+	int length() {
+		return count;
+	}
+
+	Object get(int index) {
+		if (numbers != null) {
+			return numbers[index];
+		}
+
+		return values[index];
+	}
+
+	void set(int index, Object value) {
+		if (numbers != null) {
+			if (value instanceof Double) {
+				numbers[index] = (double)value;
+				return;
+			}
+
+			generalize();
+		}
+
+		values[index] = value;
+	}
+
+	void push(Object value) {
+		if (numbers != null) {
+			if (value instanceof Double) {
+				if (count == numbers.length) {
+					numbers = Arrays.copyOf(numbers, numbers.length * 2);
+				}
+
+				numbers[count++] = (double)value;
+				return;
+			}
+
+			generalize();
+		}
+
+		if (count == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+
+		values[count++] = value;
+	}
+
+	LoxArray slice(int from, int to) {
+		int length = Math.max(to - from, 0);
+		int capacity = Math.max(length, MIN_CAPACITY);
+
+		if (numbers != null) {
+			double[] copy = new double[capacity];
+			System.arraycopy(numbers, from, copy, 0, length);
+			return new LoxArray(copy, null, length);
+		}
+
+		Object[] copy = new Object[capacity];
+		System.arraycopy(values, from, copy, 0, length);
+		return new LoxArray(null, copy, length);
+	}
+
+	private void generalize() {
+		values = new Object[numbers.length];
+
+		for (int i = 0; i < count; i++) {
+			values[i] = numbers[i];
+		}
+
+		numbers = null;
+	}
+
+	@Override
+	public Object getIndex(Token bracket, Object index) {
+		return get(checkIndex(bracket, index, count));
+	}
+
+	@Override
+	public void setIndex(Token bracket, Object index, Object value) {
+		set(checkIndex(bracket, index, count), value);
+	}
+
+	@Override
+	public Object get(Token name) {
+		switch (name.lexeme) {
+			case "length":
+				return (double)count;
+			case "push":
+				return new LoxNative("push", 1) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						push(arguments.get(0));
+						return null;
+					}
+				};
+			case "slice":
+				return new LoxNative("slice", 2) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						int from = checkIndex(name, arguments.get(0), count + 1);
+						int to = checkIndex(name, arguments.get(1), count + 1);
+						return slice(from, to);
+					}
+				};
+		}
+
+		throw new RuntimeError(name, "Undefined Property '" + name.lexeme + "'.");
+	}
+
+	private static int checkIndex(Token token, Object index, int limit) {
+		if (!(index instanceof Double)) {
+			throw new RuntimeError(token, "Array index must be a number.");
+		}
+
+		double value = (double)index;
+		int position = (int)value;
+
+		if (position != value || position < 0 || position >= limit) {
+			throw new RuntimeError(token, "Array index out of bounds: " + Interpreter.stringify(index) + ".");
+		}
+
+		return position;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+
+			builder.append(Interpreter.stringify(get(i)));
+		}
+
+		return builder.append("]").toString();
+	}
+}
@@ -0,0 +1,68 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * Blocking queue for passing values between fibers. A channel created with a
+ * 	capacity of 0 is unbuffered: send() waits for a matching receive().
+ */
+final class LoxChannel implements LoxObject {
+	// Blocking queues can't hold null.
+	private static final Object NIL = new Object();
+
+	private final BlockingQueue<Object> queue;
+
+	LoxChannel(int capacity) {
+		this.queue = capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+	}
+
+	void send(Token token, Object value) {
+		try {
+			queue.put(value == null ? NIL : value);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(token, "Interrupted while sending on a channel.");
+		}
+	}
+
+	Object receive(Token token) {
+		try {
+			Object value = queue.take();
+			return value == NIL ? null : value;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(token, "Interrupted while receiving from a channel.");
+		}
+	}
+
+	@Override
+	public Object get(Token name) {
+		switch (name.lexeme) {
+			case "send":
+				return new LoxNative("send", 1) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						send(name, arguments.get(0));
+						return null;
+					}
+				};
+			case "receive":
+				return new LoxNative("receive", 0) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						return receive(name);
+					}
+				};
+		}
+
+		throw new RuntimeError(name, "Undefined Property '" + name.lexeme + "'.");
+	}
+
+	@Override
+	public String toString() {
+		return "<channel>";
+	}
+}
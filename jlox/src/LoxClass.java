@@ -1,12 +1,15 @@
 package com.craftinginterpreters.lox;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 class LoxClass extends LoxInstance implements LoxCallable {
 	final String name;
 	final LoxClass superclass;
-	private final Map<String, LoxFunction> methods;
+	// Replaced as a whole when the class is reloaded, see HotReloader.
+	private volatile Map<String, LoxFunction> methods;
 
 	public LoxClass(LoxClass metaclass, String name, LoxClass superclass, Map<String, LoxFunction> methods) {
 		super(metaclass);
@@ -16,13 +19,41 @@ class LoxClass extends LoxInstance implements LoxCallable {
 		this.methods = methods;
 	}
 
-	public LoxFunction findMethod(String name) {
-		if (methods.containsKey(name)) {
-			return methods.get(name);
+	// The class holding the static methods.
+	LoxClass metaclass() {
+		return klass();
+	}
+
+	/**
+	 * Takes the methods of a reloaded declaration of this class, except those
+	 * 	named in unchanged, which keep their current closures.
+	 */
+	void reload(LoxClass reloaded, Set<String> unchanged) {
+		Map<String, LoxFunction> methods = new HashMap<>(reloaded.methods);
+
+		for (String name : unchanged) {
+			LoxFunction method = this.methods.get(name);
+
+			if (method != null) {
+				methods.put(name, method);
+			}
 		}
 
-		if (superclass != null) {
-			return superclass.findMethod(name);
+		this.methods = methods;
+	}
+
+	public LoxFunction findMethod(String name) {
+		int depth = 0;
+
+		for (LoxClass klass = this; klass != null; klass = klass.superclass) {
+			LoxFunction method = klass.methods.get(name);
+
+			if (method != null) {
+				LoxMetrics.recordMethodLookup(depth);
+				return method;
+			}
+
+			depth++;
 		}
 
 		return null;
@@ -31,6 +62,13 @@ class LoxClass extends LoxInstance implements LoxCallable {
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
 		LoxInstance instance = new LoxInstance(this);
+		LoxMetrics.recordInstance(this);
+
+		LoxEvents.Instantiation event = new LoxEvents.Instantiation();
+		if (event.isEnabled()) {
+			event.className = name;
+			event.commit();
+		}
 
 		LoxFunction initializer = findMethod("init");
 
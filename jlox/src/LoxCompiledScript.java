@@ -0,0 +1,34 @@
+package com.craftinginterpreters.lox;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A resolved {@link Program} bound to the engine that compiled it. Evaluating
+ * 	it skips scanning, parsing and resolution entirely.
+ */
+public class LoxCompiledScript extends CompiledScript {
+	private final LoxScriptEngine engine;
+	private final Program program;
+
+	LoxCompiledScript(LoxScriptEngine engine, Program program) {
+		this.engine = engine;
+		this.program = program;
+	}
+
+	public Program getProgram() {
+		return program;
+	}
+
+	@Override
+	public Object eval(ScriptContext context) throws ScriptException {
+		return engine.execute(program, context);
+	}
+
+	@Override
+	public ScriptEngine getEngine() {
+		return engine;
+	}
+}
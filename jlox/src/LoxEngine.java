@@ -0,0 +1,345 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Embeddable entry point to the interpreter.
+ *
+ * An engine only holds its output sinks and can be shared between threads.
+ * 	Every evaluation runs in its own {@link Session}, with its own
+ * 	{@link Interpreter} and error state, and a compiled {@link Program}
+ * 	can be run by many sessions at once.
+ */
+public final class LoxEngine {
+	public enum Result {
+		OK,
+		COMPILE_ERROR,
+		RUNTIME_ERROR
+	}
+
+	private final PrintWriter out;
+	private final PrintWriter err;
+	private final int maxCallDepth;
+	private final int outputBuffer;
+	private final boolean lazyFunctions;
+	private final int memoCapacity;
+	private final ExecutionBudget budget;
+
+	private static final Path CURRENT_DIRECTORY = Paths.get("");
+
+	public LoxEngine() {
+		this(new PrintWriter(System.out, true), new PrintWriter(System.err, true));
+	}
+
+	public LoxEngine(Writer out, Writer err) {
+		this(asPrintWriter(out), asPrintWriter(err), Integer.MAX_VALUE, OutputSink.DEFAULT_CAPACITY, false, 0, ExecutionBudget.UNLIMITED);
+	}
+
+	private LoxEngine(PrintWriter out, PrintWriter err, int maxCallDepth, int outputBuffer, boolean lazyFunctions, int memoCapacity, ExecutionBudget budget) {
+		this.out = out;
+		this.err = err;
+		this.maxCallDepth = maxCallDepth;
+		this.outputBuffer = outputBuffer;
+		this.lazyFunctions = lazyFunctions;
+		this.memoCapacity = memoCapacity;
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns an engine whose scripts fail with a "Stack overflow." runtime
+	 * 	error past the given number of nested Lox calls. Each Lox call nests
+	 * 	several Java calls, and recursing deeper than the thread's stack allows
+	 * 	throws a StackOverflowError out of the session, which may then be left
+	 * 	in an inconsistent state, so the limit should be well below that.
+	 */
+	public LoxEngine withMaxCallDepth(int maxCallDepth) {
+		return new LoxEngine(out, err, maxCallDepth, outputBuffer, lazyFunctions, memoCapacity, budget);
+	}
+
+	/**
+	 * Returns an engine that buffers up to the given number of characters of
+	 * 	printed output, written out when the buffer fills, before a runtime
+	 * 	error and when a program finishes. Zero writes out every line.
+	 */
+	public LoxEngine withOutputBuffer(int outputBuffer) {
+		return new LoxEngine(out, err, maxCallDepth, outputBuffer, lazyFunctions, memoCapacity, budget);
+	}
+
+	/**
+	 * Returns an engine that only brace-matches the bodies of top-level
+	 * 	functions when compiling, and parses and resolves each body on the
+	 * 	function's first call. Errors in a body are then reported when it's
+	 * 	first called, as a runtime error, rather than before the script runs.
+	 */
+	public LoxEngine withLazyFunctions(boolean lazyFunctions) {
+		return new LoxEngine(out, err, maxCallDepth, outputBuffer, lazyFunctions, memoCapacity, budget);
+	}
+
+	/**
+	 * Returns an engine that caches up to the given number of results per pure
+	 * 	function: one that only computes a value from its arguments and calls
+	 * 	other pure functions. Calls with arguments other than nil, booleans,
+	 * 	numbers and strings always run. Zero turns memoization off.
+	 */
+	public LoxEngine withMemoization(int memoCapacity) {
+		return new LoxEngine(out, err, maxCallDepth, outputBuffer, lazyFunctions, memoCapacity, budget);
+	}
+
+	/**
+	 * Returns an engine whose evaluations fail with a runtime error after the
+	 * 	given number of steps, loop iterations and Lox function calls.
+	 */
+	public LoxEngine withStepBudget(long steps) {
+		return new LoxEngine(out, err, maxCallDepth, outputBuffer, lazyFunctions, memoCapacity, budget.withSteps(steps));
+	}
+
+	/**
+	 * Returns an engine whose evaluations fail with a runtime error once they
+	 * 	have run for longer than the given time. The clock is only read every
+	 * 	so many steps, so a script blocked in a native call isn't stopped.
+	 */
+	public LoxEngine withTimeBudget(Duration time) {
+		return new LoxEngine(out, err, maxCallDepth, outputBuffer, lazyFunctions, memoCapacity, budget.withNanos(time.toNanos()));
+	}
+
+	/**
+	 * Returns an engine whose evaluations fail with a runtime error once the
+	 * 	threads running them have allocated more than the given number of
+	 * 	bytes, garbage included. Ignored on JVMs that don't count allocations.
+	 */
+	public LoxEngine withAllocationBudget(long bytes) {
+		return new LoxEngine(out, err, maxCallDepth, outputBuffer, lazyFunctions, memoCapacity, budget.withAllocatedBytes(bytes));
+	}
+
+	private static PrintWriter asPrintWriter(Writer writer) {
+		if (writer instanceof PrintWriter) {
+			return (PrintWriter)writer;
+		}
+
+		return new PrintWriter(writer, true);
+	}
+
+	/**
+	 * Scans, parses and resolves a script. Errors are reported to the engine's
+	 * 	error sink, and null is returned if there were any.
+	 */
+	public Program compile(String source) {
+		return compile(source, new ErrorReporter(err), lazyFunctions, CURRENT_DIRECTORY);
+	}
+
+	public Result eval(String source) {
+		return newSession().eval(source);
+	}
+
+	public Result run(Program program) {
+		return newSession().run(program);
+	}
+
+	public Session newSession() {
+		return new Session(new ErrorReporter(err), new OutputSink(out, outputBuffer), maxCallDepth, lazyFunctions, memoCapacity, budget);
+	}
+
+	static Program compile(String source, ErrorReporter reporter) {
+		return compile(source, reporter, false, CURRENT_DIRECTORY);
+	}
+
+	// Imports are relative to the given directory.
+	static Program compile(String source, ErrorReporter reporter, boolean lazyFunctions, Path directory) {
+		return compile(source, reporter, lazyFunctions, directory, null);
+	}
+
+	// Imports are relative to the given directory. The script is read from the
+	// 	given file, if not null, so imports of it don't run it a second time.
+	static Program compile(String source, ErrorReporter reporter, boolean lazyFunctions, Path directory, Path file) {
+		List<Stmt> statements = parse(source, reporter, lazyFunctions);
+
+		if (statements == null) {
+			return null;
+		}
+
+		// Imported modules compile on other threads while this script resolves.
+		ModuleLoader loader = new ModuleLoader(reporter, lazyFunctions, file);
+		loader.loadImports(statements, directory);
+
+		List<Expr> operations = resolve(statements, reporter);
+
+		if (!loader.await() || operations == null) {
+			return null;
+		}
+
+		return new Program(statements, operations, loader.links());
+	}
+
+	// Scans and parses a script, returning null if there were errors.
+	static List<Stmt> parse(String source, ErrorReporter reporter, boolean lazyFunctions) {
+		LoxEvents.Phase phase = LoxEvents.beginPhase("scan", source);
+		List<Token> tokens = ParallelScanner.scanTokens(source, reporter);
+		LoxEvents.endPhase(phase);
+
+		phase = LoxEvents.beginPhase("parse", source);
+		Parser parser = new Parser(tokens, reporter, lazyFunctions);
+		List<Stmt> statements = parser.parse();
+		LoxEvents.endPhase(phase);
+
+		// Hack until we get error recovery / parser synchronization.
+		if (reporter.hadError()) {
+			return null;
+		}
+
+		return statements;
+	}
+
+	/**
+	 * Resolves and types parsed statements. Returns the operations that check
+	 * 	their operands' types, or null if there were errors.
+	 */
+	static List<Expr> resolve(List<Stmt> statements, ErrorReporter reporter) {
+		LoxEvents.Phase phase = LoxEvents.beginPhase("resolve");
+		Resolver resolver = new Resolver(reporter);
+		resolver.resolve(statements);
+		resolver.analyzePurity();
+		LoxEvents.endPhase(phase);
+
+		// Stop if thre was a resolution error.
+		if (reporter.hadError()) {
+			return null;
+		}
+
+		phase = LoxEvents.beginPhase("infer");
+		TypeInferrer inferrer = new TypeInferrer();
+		inferrer.infer(statements);
+		LoxEvents.endPhase(phase);
+
+		return inferrer.operations;
+	}
+
+	/**
+	 * One interpreter and its globals. Runs on one thread at a time; globals
+	 * 	defined by one evaluation are visible to the next, as in the REPL.
+	 */
+	public static final class Session {
+		private final ErrorReporter reporter;
+		private final boolean lazyFunctions;
+		private final ExecutionBudget budget;
+		final Interpreter interpreter;
+
+		private Session(ErrorReporter reporter, OutputSink out, int maxCallDepth, boolean lazyFunctions, int memoCapacity, ExecutionBudget budget) {
+			this.reporter = reporter;
+			this.lazyFunctions = lazyFunctions;
+			this.budget = budget;
+			this.interpreter = new Interpreter(reporter, out);
+			this.interpreter.maxCallDepth = maxCallDepth;
+			this.interpreter.memoCapacity = memoCapacity;
+		}
+
+		public Result eval(String source) {
+			return eval(source, CURRENT_DIRECTORY);
+		}
+
+		/**
+		 * Compiles and runs a script whose imports are relative to the given
+		 * 	directory.
+		 */
+		public Result eval(String source, Path directory) {
+			reporter.reset();
+
+			Program program = compile(source, reporter, lazyFunctions, directory);
+
+			if (program == null) {
+				return Result.COMPILE_ERROR;
+			}
+
+			return run(program);
+		}
+
+		/**
+		 * Compiles and runs the source of a script file. Its imports are relative
+		 * 	to the file's directory, and imports of the file itself are skipped
+		 * 	like those of any other module that is already running.
+		 */
+		public Result evalFile(String source, Path script) {
+			reporter.reset();
+
+			Program program = compile(source, reporter, lazyFunctions, script.toAbsolutePath().getParent(), script);
+
+			if (program == null) {
+				return Result.COMPILE_ERROR;
+			}
+
+			return run(program);
+		}
+
+		/**
+		 * Compiles and runs a script file, starting from the {@link TypeProfile}
+		 * 	earlier runs stored next to it, and stores the updated profile when
+		 * 	the script is done, even if it failed at runtime.
+		 */
+		public Result evalProfiled(String source, Path script) {
+			reporter.reset();
+
+			Program program = compile(source, reporter, lazyFunctions, script.toAbsolutePath().getParent(), script);
+
+			if (program == null) {
+				return Result.COMPILE_ERROR;
+			}
+
+			// Lazily parsed bodies aren't profiled, which shifts the positions.
+			String key = ModuleLoader.hash(source) + (lazyFunctions ? " lazy" : "");
+			Path profile = TypeProfile.of(script);
+
+			TypeProfile types;
+
+			try {
+				types = TypeProfile.load(profile, key, program);
+			} catch (IOException e) {
+				reporter.note("Ignoring the type profile: " + e.getMessage());
+				types = new TypeProfile(program);
+			}
+
+			Result result;
+			interpreter.profile = types;
+
+			try {
+				result = run(program);
+			} finally {
+				interpreter.profile = null;
+			}
+
+			try {
+				types.save(profile, key);
+			} catch (IOException e) {
+				reporter.note("Can't save the type profile " + profile + ": " + e.getMessage());
+			}
+
+			return result;
+		}
+
+		public Result run(Program program) {
+			reporter.reset();
+
+			LoxEvents.Phase phase = LoxEvents.beginPhase("execute");
+			interpreter.startBudget(budget);
+
+			interpreter.interpret(program);
+
+			LoxEvents.endPhase(phase);
+
+			return reporter.hadRuntimeError() ? Result.RUNTIME_ERROR : Result.OK;
+		}
+
+		/**
+		 * Starts a thread that reloads the changed functions and classes of the
+		 * 	given script, and of the modules it imports, whenever their files
+		 * 	change. The script should be the one this session runs.
+		 */
+		public void watch(Path script) throws IOException {
+			new HotReloader(interpreter, reporter, lazyFunctions).start(script);
+		}
+	}
+}
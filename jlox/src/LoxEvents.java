@@ -0,0 +1,86 @@
+package com.craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Custom Java Flight Recorder events emitted by the interpreter, so that
+ * 	Lox-level activity shows up next to GC and JIT events in a recording.
+ *
+ * High-frequency events (calls, instantiations) are either thresholded or
+ * 	disabled by default and have to be turned on in the recording settings.
+ */
+final class LoxEvents {
+	private LoxEvents() {}
+
+	@Name("lox.Phase")
+	@Label("Lox Phase")
+	@Category({"Lox", "Pipeline"})
+	@Description("Time spent in one phase (scan, parse, resolve, infer, execute) of a Lox run")
+	@StackTrace(false)
+	static final class Phase extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Source Length")
+		int sourceLength;
+	}
+
+	@Name("lox.Call")
+	@Label("Lox Function Call")
+	@Category({"Lox", "Execution"})
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static final class Call extends Event {
+		@Label("Function")
+		String function;
+
+		@Label("Arity")
+		int arity;
+	}
+
+	@Name("lox.Instantiation")
+	@Label("Lox Instantiation")
+	@Category({"Lox", "Execution"})
+	@Enabled(false)
+	@StackTrace(false)
+	static final class Instantiation extends Event {
+		@Label("Class")
+		String className;
+	}
+
+	@Name("lox.RuntimeError")
+	@Label("Lox Runtime Error")
+	@Category({"Lox", "Execution"})
+	@StackTrace(false)
+	static final class RuntimeError extends Event {
+		@Label("Message")
+		String message;
+
+		@Label("Line")
+		int line;
+	}
+
+	static Phase beginPhase(String phase) {
+		Phase event = new Phase();
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+
+	static Phase beginPhase(String phase, String source) {
+		Phase event = beginPhase(phase);
+		event.sourceLength = source.length();
+		return event;
+	}
+
+	static void endPhase(Phase event) {
+		event.commit();
+	}
+}
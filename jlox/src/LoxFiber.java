@@ -0,0 +1,112 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Handle to a Lox function running concurrently, created by the spawn()
+ * 	native. Each fiber runs on its own {@link Interpreter} fork: its own
+ * 	environment chain over the shared globals.
+ *
+ * Fibers run on virtual threads when the JVM has them, and on a pool of
+ * 	daemon platform threads otherwise. Values other than channels aren't
+ * 	synchronized, so fibers should communicate through channels rather than
+ * 	by mutating shared instances, arrays or maps.
+ */
+final class LoxFiber implements LoxObject {
+	private static final ExecutorService executor = createExecutor();
+
+	private final CompletableFuture<Object> result = new CompletableFuture<>();
+	private volatile boolean awaited = false;
+
+	private LoxFiber() {}
+
+	static LoxFiber spawn(Interpreter parent, LoxCallable function) {
+		LoxFiber fiber = new LoxFiber();
+		Interpreter interpreter = parent.fork();
+
+		executor.execute(() -> {
+			try {
+				fiber.result.complete(function.call(interpreter, new ArrayList<>()));
+			} catch (Throwable error) {
+				fiber.result.completeExceptionally(error);
+			} finally {
+				// Its output shouldn't wait for the next flush of the script's.
+				interpreter.flush();
+			}
+		});
+
+		return fiber;
+	}
+
+	/**
+	 * Blocks until the fiber is done and returns its result. A runtime error
+	 * 	in the fiber is rethrown, still pointing at the line that raised it.
+	 */
+	Object await(Token callSite) {
+		awaited = true;
+
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(callSite, "Interrupted while awaiting a fiber.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Reports the fiber's runtime error, if it fails and wasn't awaited, once
+	 * 	it's done. The script that spawned it is done by then.
+	 */
+	void reportUnawaitedError(ErrorReporter reporter) {
+		result.whenComplete((value, error) -> {
+			if (error instanceof RuntimeError && !awaited) {
+				reporter.runtimeError((RuntimeError)error);
+			}
+		});
+	}
+
+	@Override
+	public Object get(Token name) {
+		if (name.lexeme.equals("done")) {
+			return result.isDone();
+		}
+
+		throw new RuntimeError(name, "Undefined Property '" + name.lexeme + "'.");
+	}
+
+	private static ExecutorService createExecutor() {
+		// Virtual threads only exist from Java 21 on.
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "lox-fiber");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<fiber>";
+	}
+}
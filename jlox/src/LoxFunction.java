@@ -1,26 +1,56 @@
 package com.craftinginterpreters.lox;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 class LoxFunction implements LoxCallable {
 	private final Stmt.Function declaration;
-	private final Environment closure;
+	private final Upvalue[] upvalues;
+	// The instance a method is bound to, null for functions.
+	private final LoxInstance receiver;
 	private final boolean isInitializer;
+	// Past results of a pure function, null unless memoized.
+	private MemoCache memo = null;
 
 	LoxFunction(
 		Stmt.Function declaration,
-		Environment closure,
+		Upvalue[] upvalues,
+		LoxInstance receiver,
 		boolean isInitializer
 	) {
 		this.isInitializer = isInitializer;
-		this.closure = closure;
+		this.upvalues = upvalues;
+		this.receiver = receiver;
 		this.declaration = declaration;
 	}
 
+	// Caches results from now on. Only for functions the Resolver found pure.
+	void memoize(int capacity) {
+		memo = new MemoCache(capacity);
+	}
+
 	public LoxFunction bind(LoxInstance instance) {
-		Environment environment = new Environment(closure);
-		environment.define("this", instance);
-		return new LoxFunction(declaration, environment, isInitializer);
+		return new LoxFunction(declaration, upvalues, instance, isInitializer);
+	}
+
+	/**
+	 * Whether the Resolver proved the function pure, and the globals it calls
+	 * 	are still pure functions, so that calling it from several threads at
+	 * 	once can't race.
+	 */
+	boolean isPure(Interpreter interpreter) {
+		compile(interpreter);
+		return callsPureGlobals(interpreter.globals, new HashSet<>());
+	}
+
+	// Parses and resolves a lazily parsed body before its first use.
+	private void compile(Interpreter interpreter) {
+		LazyBody lazy = declaration.lazy;
+
+		if (lazy != null) {
+			lazy.compile(declaration, interpreter.reporter);
+		}
 	}
 
 	@Override
@@ -28,26 +58,131 @@ class LoxFunction implements LoxCallable {
 		return declaration.params.size();
 	}
 
+	/**
+	 * Returns a frame from the interpreter's pool for a call. The parameters go
+	 * 	in its first slots, and a method's receiver in the slot after them.
+	 */
+	Frame newFrame(Interpreter interpreter) {
+		compile(interpreter);
+		Frame frame = interpreter.acquireFrame(declaration.locals);
+
+		if (receiver != null) {
+			frame.slots[declaration.params.size()] = receiver;
+		}
+
+		return frame;
+	}
+
+	void releaseFrame(Interpreter interpreter, Frame frame) {
+		interpreter.releaseFrame(frame, declaration.locals);
+	}
+
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
-		Environment environment = new Environment(closure);
+		Frame frame = newFrame(interpreter);
+
+		try {
+			for (int i = 0; i < arguments.size(); i++) {
+				frame.slots[i] = arguments.get(i);
+			}
 
-		for (int i = 0; i < declaration.params.size(); i++) {
-			environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+			return call(interpreter, frame);
+		} finally {
+			releaseFrame(interpreter, frame);
 		}
+	}
+
+	// Runs the body in a frame from newFrame() that already holds the arguments.
+	Object call(Interpreter interpreter, Frame frame) {
+		interpreter.safepoint(declaration.name);
+
+		MemoCache memo = this.memo;
+
+		if (memo == null) {
+			return traced(interpreter, frame);
+		}
+
+		Object key = MemoCache.key(frame.slots, arity());
+
+		if (key == MemoCache.UNCACHEABLE) {
+			return traced(interpreter, frame);
+		}
+
+		long version = interpreter.globals.functionsVersion();
+
+		if (!memo.isCurrent(version)) {
+			// The function was pure with the globals it was compiled with. Once
+			// 	one it calls is rebound to something impure, it never is again.
+			if (!callsPureGlobals(interpreter.globals, new HashSet<>())) {
+				this.memo = null;
+				return traced(interpreter, frame);
+			}
+
+			memo.revalidate(version);
+		}
+
+		Object result = memo.get(key);
+
+		if (result == MemoCache.MISS) {
+			result = traced(interpreter, frame);
+			memo.put(key, result, version);
+		}
+
+		return result;
+	}
+
+	// Whether the globals the function reads, and those they read in turn,
+	// 	are still pure functions.
+	private boolean callsPureGlobals(Environment globals, Set<Stmt.Function> checked) {
+		if (!declaration.pure) {
+			return false;
+		}
+
+		if (!checked.add(declaration)) {
+			return true;
+		}
+
+		for (String name : declaration.globalsRead) {
+			Object value = globals.values().get(name);
+
+			if (!(value instanceof LoxFunction) || !((LoxFunction)value).callsPureGlobals(globals, checked)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private Object traced(Interpreter interpreter, Frame frame) {
+		LoxEvents.Call event = new LoxEvents.Call();
+		event.begin();
+
+		try {
+			return invoke(interpreter, frame);
+		} finally {
+			event.end();
+
+			if (event.shouldCommit()) {
+				event.function = declaration.name.lexeme;
+				event.arity = arity();
+				event.commit();
+			}
+		}
+	}
 
+	private Object invoke(Interpreter interpreter, Frame frame) {
 		try {
-			interpreter.executeBlock(declaration.body, environment);
+			interpreter.executeFunction(declaration.body, frame, upvalues);
 		} catch (Return returnValue) {
 			if (isInitializer) {
-				return closure.getAt(0, "this");
+				return receiver;
 			}
 
 			return returnValue.value;
 		}
 
 		if (isInitializer) {
-			return closure.getAt(0, "this");
+			return receiver;
 		}
 
 		return null;
@@ -0,0 +1,11 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Native values that support the {@code object[index]} syntax. The interpreter
+ * 	dispatches to these directly instead of going through a {@link LoxCallable}.
+ */
+interface LoxIndexable {
+	Object getIndex(Token bracket, Object index);
+
+	void setIndex(Token bracket, Object index, Object value);
+}
@@ -0,0 +1,363 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Native hash map, laid out like clox's {@code Table} (see table.c): open
+ * 	addressing with linear probing, tombstones for deleted entries, and a
+ * 	power of two capacity grown at 75% load. Keys and values live in parallel
+ * 	arrays, so there is no per-entry object.
+ *
+ * Number keys get their own table that stores the raw bits of the double, so
+ * 	they are never boxed. Every other key is compared with equals(), which for
+ * 	instances, classes and functions means identity.
+ */
+final class LoxMap implements LoxIndexable, LoxObject {
+	private static final double TABLE_MAX_LOAD = 0.75;
+	private static final int MIN_CAPACITY = 8;
+
+	private static final Object TOMBSTONE = new Object();
+
+	private static final byte EMPTY = 0;
+	private static final byte FULL = 1;
+	private static final byte DELETED = 2;
+
+	private Object[] keys = new Object[0];
+	private Object[] values = new Object[0];
+	// Occupied slots, tombstones included, which is what drives growth.
+	private int used = 0;
+
+	private long[] numberKeys = new long[0];
+	private Object[] numberValues = new Object[0];
+	private byte[] numberStates = new byte[0];
+	private int numbersUsed = 0;
+
+	private int size = 0;
+
+	int size() {
+		return size;
+	}
+
+	Object get(Object key) {
+		if (key instanceof Double) {
+			return getNumber((double)key);
+		}
+
+		if (used == 0) {
+			return null;
+		}
+
+		int index = findEntry(keys, key);
+		return keys[index] == null ? null : values[index];
+	}
+
+	boolean has(Object key) {
+		if (key instanceof Double) {
+			if (numbersUsed == 0) {
+				return false;
+			}
+
+			long bits = Double.doubleToLongBits((double)key);
+			return numberStates[findNumber(numberKeys, numberStates, bits)] == FULL;
+		}
+
+		return used != 0 && keys[findEntry(keys, key)] != null;
+	}
+
+	Object getNumber(double key) {
+		if (numbersUsed == 0) {
+			return null;
+		}
+
+		long bits = Double.doubleToLongBits(key);
+		int index = findNumber(numberKeys, numberStates, bits);
+		return numberStates[index] == FULL ? numberValues[index] : null;
+	}
+
+	void set(Object key, Object value) {
+		if (key instanceof Double) {
+			setNumber((double)key, value);
+			return;
+		}
+
+		if (used + 1 > keys.length * TABLE_MAX_LOAD) {
+			adjustCapacity(growCapacity(keys.length));
+		}
+
+		int index = findEntry(keys, key);
+
+		if (keys[index] == null) {
+			used++;
+			size++;
+		} else if (keys[index] == TOMBSTONE) {
+			size++;
+		}
+
+		keys[index] = key;
+		values[index] = value;
+	}
+
+	void setNumber(double key, Object value) {
+		if (numbersUsed + 1 > numberKeys.length * TABLE_MAX_LOAD) {
+			adjustNumberCapacity(growCapacity(numberKeys.length));
+		}
+
+		long bits = Double.doubleToLongBits(key);
+		int index = findNumber(numberKeys, numberStates, bits);
+
+		if (numberStates[index] == EMPTY) {
+			numbersUsed++;
+			size++;
+		} else if (numberStates[index] == DELETED) {
+			size++;
+		}
+
+		numberKeys[index] = bits;
+		numberValues[index] = value;
+		numberStates[index] = FULL;
+	}
+
+	boolean delete(Object key) {
+		if (key instanceof Double) {
+			if (numbersUsed == 0) {
+				return false;
+			}
+
+			long bits = Double.doubleToLongBits((double)key);
+			int index = findNumber(numberKeys, numberStates, bits);
+
+			if (numberStates[index] != FULL) {
+				return false;
+			}
+
+			// Place a tombstone in the entry.
+			numberStates[index] = DELETED;
+			numberValues[index] = null;
+			size--;
+			return true;
+		}
+
+		if (used == 0) {
+			return false;
+		}
+
+		int index = findEntry(keys, key);
+
+		if (keys[index] == null || keys[index] == TOMBSTONE) {
+			return false;
+		}
+
+		keys[index] = TOMBSTONE;
+		values[index] = null;
+		size--;
+		return true;
+	}
+
+	// Returns the slot holding the key, or else the first tombstone passed on
+	// 	the way to an empty slot, or else that empty slot.
+	private static int findEntry(Object[] keys, Object key) {
+		int mask = keys.length - 1;
+		int index = spread(key.hashCode()) & mask;
+		int tombstone = -1;
+
+		while (true) {
+			Object entry = keys[index];
+
+			if (entry == null) {
+				return tombstone != -1 ? tombstone : index;
+			} else if (entry == TOMBSTONE) {
+				if (tombstone == -1) {
+					tombstone = index;
+				}
+			} else if (entry == key || entry.equals(key)) {
+				return index;
+			}
+
+			index = (index + 1) & mask;
+		}
+	}
+
+	private static int findNumber(long[] keys, byte[] states, long bits) {
+		int mask = keys.length - 1;
+		int index = spread(Long.hashCode(bits)) & mask;
+		int tombstone = -1;
+
+		while (true) {
+			byte state = states[index];
+
+			if (state == EMPTY) {
+				return tombstone != -1 ? tombstone : index;
+			} else if (state == DELETED) {
+				if (tombstone == -1) {
+					tombstone = index;
+				}
+			} else if (keys[index] == bits) {
+				return index;
+			}
+
+			index = (index + 1) & mask;
+		}
+	}
+
+	private void adjustCapacity(int capacity) {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		used = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			Object key = oldKeys[i];
+
+			if (key == null || key == TOMBSTONE) {
+				continue;
+			}
+
+			int index = findEntry(keys, key);
+			keys[index] = key;
+			values[index] = oldValues[i];
+			used++;
+		}
+	}
+
+	private void adjustNumberCapacity(int capacity) {
+		long[] oldKeys = numberKeys;
+		Object[] oldValues = numberValues;
+		byte[] oldStates = numberStates;
+
+		numberKeys = new long[capacity];
+		numberValues = new Object[capacity];
+		numberStates = new byte[capacity];
+		numbersUsed = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStates[i] != FULL) {
+				continue;
+			}
+
+			int index = findNumber(numberKeys, numberStates, oldKeys[i]);
+			numberKeys[index] = oldKeys[i];
+			numberValues[index] = oldValues[i];
+			numberStates[index] = FULL;
+			numbersUsed++;
+		}
+	}
+
+	private static int growCapacity(int capacity) {
+		return capacity < MIN_CAPACITY ? MIN_CAPACITY : capacity * 2;
+	}
+
+	// Linear probing is sensitive to clustered hashes, such as small integers.
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static Object checkKey(Token token, Object key) {
+		if (key == null) {
+			throw new RuntimeError(token, "Map key can't be nil.");
+		}
+
+		// Ropes hash and compare by their text, store that instead.
+		return Rope.flatten(key);
+	}
+
+	LoxArray keys() {
+		LoxArray result = new LoxArray();
+
+		for (int i = 0; i < numberKeys.length; i++) {
+			if (numberStates[i] == FULL) {
+				result.push(Double.longBitsToDouble(numberKeys[i]));
+			}
+		}
+
+		for (Object key : keys) {
+			if (key != null && key != TOMBSTONE) {
+				result.push(key);
+			}
+		}
+
+		return result;
+	}
+
+	LoxArray values() {
+		LoxArray result = new LoxArray();
+
+		for (int i = 0; i < numberKeys.length; i++) {
+			if (numberStates[i] == FULL) {
+				result.push(numberValues[i]);
+			}
+		}
+
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null && keys[i] != TOMBSTONE) {
+				result.push(values[i]);
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public Object getIndex(Token bracket, Object key) {
+		if (key instanceof Double) {
+			return getNumber((double)key);
+		}
+
+		return get(checkKey(bracket, key));
+	}
+
+	@Override
+	public void setIndex(Token bracket, Object key, Object value) {
+		if (key instanceof Double) {
+			setNumber((double)key, value);
+			return;
+		}
+
+		set(checkKey(bracket, key), value);
+	}
+
+	@Override
+	public Object get(Token name) {
+		switch (name.lexeme) {
+			case "size":
+				return (double)size;
+			case "has":
+				return new LoxNative("has", 1) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						return has(checkKey(name, arguments.get(0)));
+					}
+				};
+			case "delete":
+				return new LoxNative("delete", 1) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						return delete(checkKey(name, arguments.get(0)));
+					}
+				};
+			case "keys":
+				return new LoxNative("keys", 0) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						return keys();
+					}
+				};
+			case "values":
+				return new LoxNative("values", 0) {
+					@Override
+					public Object call(Interpreter interpreter, List<Object> arguments) {
+						return values();
+					}
+				};
+		}
+
+		throw new RuntimeError(name, "Undefined Property '" + name.lexeme + "'.");
+	}
+
+	@Override
+	public String toString() {
+		return "<map " + size + ">";
+	}
+}
@@ -0,0 +1,230 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide interpreter counters. Everything is a {@link LongAdder} so that
+ * 	interpreters running on different threads don't contend on a shared
+ * 	cache line, and every record method is a single branch when disabled.
+ */
+final class LoxMetrics implements LoxMetricsMXBean {
+	static final String OBJECT_NAME = "com.craftinginterpreters.lox:type=Metrics";
+	static final int LOOKUP_DEPTH_BUCKETS = 8;
+
+	private static volatile boolean enabled = false;
+	private static final LoxMetrics instance = new LoxMetrics();
+
+	private final LongAdder calls = new LongAdder();
+	private final Map<String, LongAdder> instances = new ConcurrentHashMap<>();
+	private final LongAdder environments = new LongAdder();
+	private final LongAdder globalLookups = new LongAdder();
+	private final LongAdder localLookups = new LongAdder();
+	private final LongAdder[] lookupDepths = new LongAdder[LOOKUP_DEPTH_BUCKETS];
+	private final LongAdder checkedOperations = new LongAdder();
+	private final LongAdder provenOperations = new LongAdder();
+	private final LongAdder speculatedOperations = new LongAdder();
+	private final LongAdder memoHits = new LongAdder();
+	private final LongAdder memoMisses = new LongAdder();
+
+	private LoxMetrics() {
+		for (int i = 0; i < LOOKUP_DEPTH_BUCKETS; i++) {
+			lookupDepths[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Turns the counters on and exposes them over JMX. Safe to call more than once.
+	 */
+	static synchronized void enable() {
+		if (enabled) {
+			return;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			if (!server.isRegistered(name)) {
+				server.registerMBean(instance, name);
+			}
+		} catch (JMException e) {
+			System.err.println("Could not register Lox metrics MBean: " + e.getMessage());
+		}
+
+		enabled = true;
+	}
+
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	static void recordCall() {
+		if (enabled) {
+			instance.calls.increment();
+		}
+	}
+
+	static void recordInstance(LoxClass klass) {
+		if (enabled) {
+			instance.instances.computeIfAbsent(klass.name, k -> new LongAdder()).increment();
+		}
+	}
+
+	static void recordEnvironment() {
+		if (enabled) {
+			instance.environments.increment();
+		}
+	}
+
+	static void recordLookup(boolean global) {
+		if (enabled) {
+			(global ? instance.globalLookups : instance.localLookups).increment();
+		}
+	}
+
+	static void recordMethodLookup(int depth) {
+		if (enabled) {
+			instance.lookupDepths[Math.min(depth, LOOKUP_DEPTH_BUCKETS - 1)].increment();
+		}
+	}
+
+	static void recordInference(int checked, int proven) {
+		if (enabled) {
+			instance.checkedOperations.add(checked);
+			instance.provenOperations.add(proven);
+		}
+	}
+
+	static void recordSpeculation(int speculated) {
+		if (enabled) {
+			instance.speculatedOperations.add(speculated);
+		}
+	}
+
+	static void recordMemoLookup(boolean hit) {
+		if (enabled) {
+			(hit ? instance.memoHits : instance.memoMisses).increment();
+		}
+	}
+
+	static void dump(PrintStream out) {
+		out.println("== lox stats ==");
+		out.println("calls executed:        " + instance.getCallsExecuted());
+		out.println("environments created:  " + instance.getEnvironmentsAllocated());
+		out.println("global lookups:        " + instance.getGlobalLookups());
+		out.println("local lookups:         " + instance.getLocalLookups());
+
+		long checked = instance.getCheckedOperations();
+		long proven = instance.getProvenOperations();
+		out.println("proven numeric ops:    " + proven + " of " + checked
+			+ (checked == 0 ? "" : String.format(" (%.1f%%)", 100.0 * proven / checked)));
+		out.println("speculated numeric ops: " + instance.getSpeculatedOperations());
+		out.println("memoized calls:        " + instance.getMemoHits() + " hits, " + instance.getMemoMisses() + " misses");
+		out.println("instances created:");
+
+		for (Map.Entry<String, Long> entry : instance.getInstancesCreated().entrySet()) {
+			out.println("  " + entry.getKey() + ": " + entry.getValue());
+		}
+
+		out.println("method lookup depths:");
+
+		long[] depths = instance.getMethodLookupDepths();
+		for (int i = 0; i < depths.length; i++) {
+			String label = i == depths.length - 1 ? i + "+" : String.valueOf(i);
+			out.println("  " + label + ": " + depths[i]);
+		}
+	}
+
+	@Override
+	public long getCallsExecuted() {
+		return calls.sum();
+	}
+
+	@Override
+	public Map<String, Long> getInstancesCreated() {
+		Map<String, Long> snapshot = new TreeMap<>();
+
+		for (Map.Entry<String, LongAdder> entry : instances.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().sum());
+		}
+
+		return snapshot;
+	}
+
+	@Override
+	public long getEnvironmentsAllocated() {
+		return environments.sum();
+	}
+
+	@Override
+	public long getGlobalLookups() {
+		return globalLookups.sum();
+	}
+
+	@Override
+	public long getLocalLookups() {
+		return localLookups.sum();
+	}
+
+	@Override
+	public long getCheckedOperations() {
+		return checkedOperations.sum();
+	}
+
+	@Override
+	public long getProvenOperations() {
+		return provenOperations.sum();
+	}
+
+	@Override
+	public long getSpeculatedOperations() {
+		return speculatedOperations.sum();
+	}
+
+	@Override
+	public long getMemoHits() {
+		return memoHits.sum();
+	}
+
+	@Override
+	public long getMemoMisses() {
+		return memoMisses.sum();
+	}
+
+	@Override
+	public long[] getMethodLookupDepths() {
+		long[] depths = new long[LOOKUP_DEPTH_BUCKETS];
+
+		for (int i = 0; i < LOOKUP_DEPTH_BUCKETS; i++) {
+			depths[i] = lookupDepths[i].sum();
+		}
+
+		return depths;
+	}
+
+	@Override
+	public void reset() {
+		calls.reset();
+		instances.clear();
+		environments.reset();
+		globalLookups.reset();
+		localLookups.reset();
+		checkedOperations.reset();
+		provenOperations.reset();
+		speculatedOperations.reset();
+		memoHits.reset();
+		memoMisses.reset();
+
+		for (LongAdder bucket : lookupDepths) {
+			bucket.reset();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+
+/**
+ * Management interface for the interpreter's runtime counters, registered
+ * 	under {@link LoxMetrics#OBJECT_NAME} when metrics are enabled.
+ */
+public interface LoxMetricsMXBean {
+	long getCallsExecuted();
+
+	Map<String, Long> getInstancesCreated();
+
+	long getEnvironmentsAllocated();
+
+	long getGlobalLookups();
+
+	long getLocalLookups();
+
+	/**
+	 * Arithmetic and comparison operations compiled so far, and how many of
+	 * 	them type inference proved only ever see numbers.
+	 */
+	long getCheckedOperations();
+
+	long getProvenOperations();
+
+	// Unproven operations a stored type profile speculates only see numbers.
+	long getSpeculatedOperations();
+
+	// Calls to memoized pure functions answered from, and added to, a cache.
+	long getMemoHits();
+
+	long getMemoMisses();
+
+	/**
+	 * Number of method lookups that found their method {@code i} superclasses
+	 * 	up from the receiver's class. The last bucket also counts deeper lookups.
+	 */
+	long[] getMethodLookupDepths();
+
+	void reset();
+}
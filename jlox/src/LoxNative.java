@@ -0,0 +1,24 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Base class for functions implemented in Java and exposed to Lox scripts.
+ */
+abstract class LoxNative implements LoxCallable {
+	private final String name;
+	private final int arity;
+
+	LoxNative(String name, int arity) {
+		this.name = name;
+		this.arity = arity;
+	}
+
+	@Override
+	public int arity() {
+		return arity;
+	}
+
+	@Override
+	public String toString() {
+		return "<native fn " + name + ">";
+	}
+}
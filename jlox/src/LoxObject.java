@@ -0,0 +1,8 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Values whose properties can be read with the {@code object.name} syntax.
+ */
+interface LoxObject {
+	Object get(Token name);
+}
@@ -0,0 +1,200 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The parallelMap, parallelFilter and parallelReduce natives. Arrays are split
+ * 	recursively on the common {@link ForkJoinPool}, and every leaf task runs
+ * 	its slice on its own {@link Interpreter} fork.
+ *
+ * Workers run the function at the same time, so it has to be pure, as the
+ * 	Resolver decides for memoization: it can't print, assign to variables it
+ * 	doesn't own, set properties or elements, or call anything but other pure
+ * 	functions. Other functions are rejected up front. The input array must
+ * 	not be modified while the native runs.
+ */
+final class LoxParallel {
+	// Leaves smaller than this aren't worth a task of their own.
+	private static final int MIN_SLICE = 64;
+
+	private LoxParallel() {}
+
+	static void define(Environment globals) {
+		globals.define("parallelMap", new LoxNative("parallelMap", 2) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				LoxArray array = checkArray(interpreter, arguments.get(0));
+				LoxCallable function = checkFunction(interpreter, arguments.get(1), 1);
+				Object[] results = new Object[array.length()];
+
+				ForkJoinPool.commonPool().invoke(new MapTask(interpreter, array, function, results, 0, array.length()));
+				return LoxArray.of(results, results.length);
+			}
+		});
+
+		globals.define("parallelFilter", new LoxNative("parallelFilter", 2) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				LoxArray array = checkArray(interpreter, arguments.get(0));
+				LoxCallable function = checkFunction(interpreter, arguments.get(1), 1);
+				Object[] results = new Object[array.length()];
+
+				ForkJoinPool.commonPool().invoke(new MapTask(interpreter, array, function, results, 0, array.length()));
+
+				Object[] kept = new Object[results.length];
+				int count = 0;
+
+				for (int i = 0; i < results.length; i++) {
+					if (Interpreter.isTruthy(results[i])) {
+						kept[count++] = array.get(i);
+					}
+				}
+
+				return LoxArray.of(kept, count);
+			}
+		});
+
+		globals.define("parallelReduce", new LoxNative("parallelReduce", 3) {
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				LoxArray array = checkArray(interpreter, arguments.get(0));
+				LoxCallable function = checkFunction(interpreter, arguments.get(1), 2);
+				Object initial = arguments.get(2);
+
+				if (array.length() == 0) {
+					return initial;
+				}
+
+				Object total = ForkJoinPool.commonPool().invoke(new ReduceTask(interpreter, array, function, 0, array.length()));
+				return apply(function, interpreter, initial, total);
+			}
+		});
+	}
+
+	private static LoxArray checkArray(Interpreter interpreter, Object array) {
+		if (!(array instanceof LoxArray)) {
+			throw new RuntimeError(interpreter.callSite, "Expect an array.");
+		}
+
+		return (LoxArray)array;
+	}
+
+	private static LoxCallable checkFunction(Interpreter interpreter, Object function, int arity) {
+		if (!(function instanceof LoxCallable) || ((LoxCallable)function).arity() != arity) {
+			throw new RuntimeError(interpreter.callSite, "Expect a function that takes " + arity + " argument" + (arity == 1 ? "" : "s") + ".");
+		}
+
+		// Natives and classes aren't known to be pure.
+		if (!(function instanceof LoxFunction) || !((LoxFunction)function).isPure(interpreter)) {
+			throw new RuntimeError(interpreter.callSite, "Can't run " + function + " in parallel, it isn't pure.");
+		}
+
+		return (LoxCallable)function;
+	}
+
+	private static int sliceSize(int length) {
+		int parallelism = ForkJoinPool.commonPool().getParallelism();
+		return Math.max(MIN_SLICE, length / (parallelism * 4));
+	}
+
+	private static Object apply(LoxCallable function, Interpreter interpreter, Object... arguments) {
+		List<Object> list = new ArrayList<>(arguments.length);
+
+		for (Object argument : arguments) {
+			list.add(argument);
+		}
+
+		return function.call(interpreter, list);
+	}
+
+	private static final class MapTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Interpreter interpreter;
+		private final LoxArray array;
+		private final LoxCallable function;
+		private final Object[] results;
+		private final int from;
+		private final int to;
+
+		MapTask(Interpreter interpreter, LoxArray array, LoxCallable function, Object[] results, int from, int to) {
+			this.interpreter = interpreter;
+			this.array = array;
+			this.function = function;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= sliceSize(array.length())) {
+				Interpreter worker = interpreter.fork();
+				List<Object> arguments = new ArrayList<>(1);
+				arguments.add(null);
+
+				for (int i = from; i < to; i++) {
+					arguments.set(0, array.get(i));
+					results[i] = function.call(worker, arguments);
+				}
+
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(
+				new MapTask(interpreter, array, function, results, from, middle),
+				new MapTask(interpreter, array, function, results, middle, to)
+			);
+		}
+	}
+
+	// Reduces each slice from its first element and combines the slices in
+	// 	order, so the function has to be associative.
+	private static final class ReduceTask extends RecursiveTask<Object> {
+		private static final long serialVersionUID = 1L;
+
+		private final Interpreter interpreter;
+		private final LoxArray array;
+		private final LoxCallable function;
+		private final int from;
+		private final int to;
+
+		ReduceTask(Interpreter interpreter, LoxArray array, LoxCallable function, int from, int to) {
+			this.interpreter = interpreter;
+			this.array = array;
+			this.function = function;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Object compute() {
+			Interpreter worker = interpreter.fork();
+
+			if (to - from <= sliceSize(array.length())) {
+				Object accumulator = array.get(from);
+
+				for (int i = from + 1; i < to; i++) {
+					accumulator = apply(function, worker, accumulator, array.get(i));
+				}
+
+				return accumulator;
+			}
+
+			int middle = (from + to) >>> 1;
+			ReduceTask left = new ReduceTask(interpreter, array, function, from, middle);
+			ReduceTask right = new ReduceTask(interpreter, array, function, middle, to);
+			right.fork();
+
+			Object leftResult = left.compute();
+			Object rightResult = right.join();
+
+			return apply(function, worker, leftResult, rightResult);
+		}
+	}
+}
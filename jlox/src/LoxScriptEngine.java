@@ -0,0 +1,315 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+/**
+ * JSR-223 engine backed by a single {@link Interpreter}.
+ *
+ * The engine scope bindings of the default context are a live view of the
+ * 	interpreter's globals. Bindings from any other context are copied into the
+ * 	globals before each evaluation. {@link #compile} returns a script holding
+ * 	the resolved {@link Program}, which can be evaluated any number of times
+ * 	without being scanned, parsed or resolved again.
+ */
+public class LoxScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+	private final ScriptEngineFactory factory;
+	private final Interpreter interpreter;
+	private final Bindings globals;
+
+	// The context output is currently routed to.
+	private ScriptContext current;
+
+	LoxScriptEngine(ScriptEngineFactory factory) {
+		this.factory = factory;
+		this.current = context;
+
+		PrintWriter out = new PrintWriter(new ContextWriter(false), true);
+		PrintWriter err = new PrintWriter(new ContextWriter(true), true);
+		this.interpreter = new Interpreter(new ErrorReporter(err), new OutputSink(out, OutputSink.DEFAULT_CAPACITY));
+
+		this.globals = new GlobalBindings(interpreter.globals.values());
+		context.setBindings(globals, ScriptContext.ENGINE_SCOPE);
+	}
+
+	@Override
+	public Object eval(String script, ScriptContext context) throws ScriptException {
+		return execute(compileProgram(script, context), context);
+	}
+
+	@Override
+	public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+		return eval(readAll(reader), context);
+	}
+
+	@Override
+	public CompiledScript compile(String script) throws ScriptException {
+		return new LoxCompiledScript(this, compileProgram(script, context));
+	}
+
+	@Override
+	public CompiledScript compile(Reader script) throws ScriptException {
+		return compile(readAll(script));
+	}
+
+	@Override
+	public Bindings createBindings() {
+		return new SimpleBindings();
+	}
+
+	@Override
+	public ScriptEngineFactory getFactory() {
+		return factory;
+	}
+
+	@Override
+	public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+		Object function = interpreter.globals.values().get(name);
+
+		if (!(function instanceof LoxCallable)) {
+			throw new NoSuchMethodException(name);
+		}
+
+		return call((LoxCallable)function, args);
+	}
+
+	@Override
+	public Object invokeMethod(Object thiz, String name, Object... args) throws ScriptException, NoSuchMethodException {
+		if (!(thiz instanceof LoxInstance)) {
+			throw new IllegalArgumentException("Not a Lox instance: " + thiz);
+		}
+
+		Object method;
+
+		try {
+			method = ((LoxInstance)thiz).get(new Token(TokenType.IDENTIFIER, name, null, 0));
+		} catch (RuntimeError error) {
+			throw new NoSuchMethodException(name);
+		}
+
+		if (!(method instanceof LoxCallable)) {
+			throw new NoSuchMethodException(name);
+		}
+
+		return call((LoxCallable)method, args);
+	}
+
+	@Override
+	public <T> T getInterface(Class<T> clasz) {
+		for (Method method : clasz.getMethods()) {
+			if (!(interpreter.globals.values().get(method.getName()) instanceof LoxCallable)) {
+				return null;
+			}
+		}
+
+		return proxy(clasz, null);
+	}
+
+	@Override
+	public <T> T getInterface(Object thiz, Class<T> clasz) {
+		if (!(thiz instanceof LoxInstance)) {
+			throw new IllegalArgumentException("Not a Lox instance: " + thiz);
+		}
+
+		return proxy(clasz, thiz);
+	}
+
+	private <T> T proxy(Class<T> clasz, Object thiz) {
+		if (clasz == null || !clasz.isInterface()) {
+			throw new IllegalArgumentException("Not an interface: " + clasz);
+		}
+
+		Object proxy = Proxy.newProxyInstance(clasz.getClassLoader(), new Class<?>[] { clasz }, (self, method, args) -> {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+					case "equals": return self == args[0];
+					case "hashCode": return System.identityHashCode(self);
+					default: return "<lox proxy " + clasz.getName() + ">";
+				}
+			}
+
+			if (thiz == null) {
+				return invokeFunction(method.getName(), args);
+			}
+
+			return invokeMethod(thiz, method.getName(), args);
+		});
+
+		return clasz.cast(proxy);
+	}
+
+	Object execute(Program program, ScriptContext context) throws ScriptException {
+		ScriptContext previous = current;
+		current = context;
+
+		try {
+			importBindings(context);
+			return toJava(interpreter.run(program));
+		} catch (RuntimeError error) {
+			throw scriptException(error, context);
+		} finally {
+			interpreter.flush();
+			current = previous;
+		}
+	}
+
+	private Object call(LoxCallable callable, Object[] args) throws ScriptException {
+		List<Object> arguments = new ArrayList<>();
+
+		if (args != null) {
+			for (Object arg : args) {
+				arguments.add(toLox(arg));
+			}
+		}
+
+		if (arguments.size() != callable.arity()) {
+			throw new ScriptException("Expected " + callable.arity() + " arguments but got " + arguments.size() + ".");
+		}
+
+		// Called from Java, there is no call site.
+		interpreter.callSite = null;
+
+		try {
+			return toJava(callable.call(interpreter, arguments));
+		} catch (RuntimeError error) {
+			throw scriptException(error, context);
+		} finally {
+			interpreter.flush();
+		}
+	}
+
+	private Program compileProgram(String script, ScriptContext context) throws ScriptException {
+		StringWriter errors = new StringWriter();
+		Program program = LoxEngine.compile(script, new ErrorReporter(new PrintWriter(errors)));
+
+		if (program == null) {
+			throw new ScriptException(errors.toString().trim(), fileName(context), -1);
+		}
+
+		return program;
+	}
+
+	private void importBindings(ScriptContext context) {
+		Bindings engineScope = context.getBindings(ScriptContext.ENGINE_SCOPE);
+
+		if (engineScope != null && engineScope != globals) {
+			for (Map.Entry<String, Object> entry : engineScope.entrySet()) {
+				globals.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		// Global scope bindings only fill in names the script hasn't defined.
+		Bindings globalScope = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+
+		if (globalScope != null) {
+			for (Map.Entry<String, Object> entry : globalScope.entrySet()) {
+				if (!globals.containsKey(entry.getKey())) {
+					globals.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	private static ScriptException scriptException(RuntimeError error, ScriptContext context) {
+		int line = error.token == null ? -1 : error.token.line;
+		ScriptException exception = new ScriptException(error.getMessage(), fileName(context), line);
+		exception.initCause(error);
+		return exception;
+	}
+
+	private static String fileName(ScriptContext context) {
+		Object name = context.getAttribute(ScriptEngine.FILENAME);
+		return name == null ? null : name.toString();
+	}
+
+	private static String readAll(Reader reader) throws ScriptException {
+		StringBuilder source = new StringBuilder();
+		char[] buffer = new char[8192];
+
+		try {
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				source.append(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw new ScriptException(e);
+		}
+
+		return source.toString();
+	}
+
+	// Lox only has doubles, so every Java number becomes one.
+	static Object toLox(Object value) {
+		if (value instanceof Number && !(value instanceof Double)) {
+			return ((Number)value).doubleValue();
+		}
+
+		if (value instanceof Character) {
+			return value.toString();
+		}
+
+		return value;
+	}
+
+	static Object toJava(Object value) {
+		return Rope.flatten(value);
+	}
+
+	private static final class GlobalBindings extends SimpleBindings {
+		GlobalBindings(Map<String, Object> values) {
+			super(values);
+		}
+
+		@Override
+		public Object put(String name, Object value) {
+			return super.put(name, toLox(value));
+		}
+	}
+
+	// Follows whichever context is being evaluated, so that print and error
+	// 	messages go to that context's writers.
+	private final class ContextWriter extends Writer {
+		private final boolean error;
+
+		ContextWriter(boolean error) {
+			this.error = error;
+		}
+
+		private Writer target() {
+			return error ? current.getErrorWriter() : current.getWriter();
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) throws IOException {
+			target().write(buffer, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target().flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
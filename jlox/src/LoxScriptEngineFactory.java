@@ -0,0 +1,92 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * JSR-223 factory, registered through META-INF/services so that
+ * 	{@code new ScriptEngineManager().getEngineByName("lox")} finds it.
+ */
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+	private static final List<String> NAMES = List.of("lox", "jlox");
+	private static final List<String> EXTENSIONS = List.of("lox");
+	private static final List<String> MIME_TYPES = List.of("application/x-lox", "text/x-lox");
+
+	@Override
+	public String getEngineName() {
+		return "jlox";
+	}
+
+	@Override
+	public String getEngineVersion() {
+		return "1.0";
+	}
+
+	@Override
+	public List<String> getExtensions() {
+		return EXTENSIONS;
+	}
+
+	@Override
+	public List<String> getMimeTypes() {
+		return MIME_TYPES;
+	}
+
+	@Override
+	public List<String> getNames() {
+		return NAMES;
+	}
+
+	@Override
+	public String getLanguageName() {
+		return "Lox";
+	}
+
+	@Override
+	public String getLanguageVersion() {
+		return "1.0";
+	}
+
+	@Override
+	public Object getParameter(String key) {
+		switch (key) {
+			case ScriptEngine.ENGINE: return getEngineName();
+			case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+			case ScriptEngine.NAME: return NAMES.get(0);
+			case ScriptEngine.LANGUAGE: return getLanguageName();
+			case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+			// An engine owns a single interpreter, so it is not thread-safe.
+			// 	Compiled scripts can be shared between engines, though.
+			case "THREADING": return null;
+		}
+
+		return null;
+	}
+
+	@Override
+	public String getMethodCallSyntax(String obj, String m, String... args) {
+		return obj + "." + m + "(" + String.join(", ", args) + ")";
+	}
+
+	@Override
+	public String getOutputStatement(String toDisplay) {
+		return "print \"" + toDisplay.replace("\"", "") + "\";";
+	}
+
+	@Override
+	public String getProgram(String... statements) {
+		StringBuilder program = new StringBuilder();
+
+		for (String statement : statements) {
+			program.append(statement).append(";\n");
+		}
+
+		return program.toString();
+	}
+
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new LoxScriptEngine(this);
+	}
+}
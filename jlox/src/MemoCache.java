@@ -0,0 +1,77 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of a pure function, keyed by its arguments, dropping the least
+ * 	recently used entry past a fixed size. Only calls whose arguments are all
+ * 	nil, booleans, numbers or strings are cached: a pure function can still
+ * 	read the fields of an instance it's passed, which may change between calls.
+ */
+final class MemoCache {
+	// Returned by key() for calls that can't be cached, and by get() on a miss.
+	static final Object UNCACHEABLE = new Object();
+	static final Object MISS = new Object();
+
+	private final Map<Object, Object> results;
+	// The version of the globals' functions the results were computed with.
+	private long functionsVersion = 0;
+
+	MemoCache(int capacity) {
+		this.results = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * The key for a call with the given arguments, the first slots of the
+	 * 	callee's frame, or UNCACHEABLE.
+	 */
+	static Object key(Object[] arguments, int arity) {
+		for (int i = 0; i < arity; i++) {
+			if (!isValue(arguments[i])) {
+				return UNCACHEABLE;
+			}
+		}
+
+		// A single argument is its own key.
+		if (arity == 1) {
+			return arguments[0];
+		}
+
+		return Arrays.asList(Arrays.copyOf(arguments, arity));
+	}
+
+	private static boolean isValue(Object value) {
+		return value == null || value instanceof Double || value instanceof String || value instanceof Boolean;
+	}
+
+	// Fibers may call the same function, so the cache is locked.
+	synchronized boolean isCurrent(long functionsVersion) {
+		return functionsVersion == this.functionsVersion;
+	}
+
+	// Drops the results computed before a global function was rebound.
+	synchronized void revalidate(long functionsVersion) {
+		results.clear();
+		this.functionsVersion = functionsVersion;
+	}
+
+	synchronized Object get(Object key) {
+		Object result = results.getOrDefault(key, MISS);
+		LoxMetrics.recordMemoLookup(result != MISS);
+		return result;
+	}
+
+	// A result computed before a function was rebound isn't kept.
+	synchronized void put(Object key, Object result, long functionsVersion) {
+		if (functionsVersion == this.functionsVersion) {
+			results.put(key, result);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A compiled script file that other scripts import. Modules are shared
+ * 	between sessions through the {@link ModuleLoader} cache, and each session
+ * 	runs a module's top-level code once, the first time it is imported.
+ */
+final class Module {
+	final Path path;
+	// SHA-256 of the source, so an edited file compiles again.
+	final String hash;
+	// Null if the module has errors.
+	final Program program;
+	// The import statements at the top level of the module.
+	final List<Stmt.Import> imports;
+	final BufferedReporter errors;
+
+	Module(Path path, String hash, Program program, List<Stmt.Import> imports, BufferedReporter errors) {
+		this.path = path;
+		this.hash = hash;
+		this.program = program;
+		this.imports = imports;
+		this.errors = errors;
+	}
+
+	@Override
+	public String toString() {
+		return "<module " + path + ">";
+	}
+}
@@ -0,0 +1,215 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds and compiles the modules a script imports. Compiled modules are cached
+ * 	for the life of the process by path and SHA-256 of their contents, so
+ * 	sessions and REPL lines that import an unchanged file share one copy.
+ *
+ * A module starts compiling on the common ForkJoinPool as soon as a script
+ * 	importing it has been parsed, alongside the other imports and the
+ * 	importing script's own resolution. Modules only declare globals, so they
+ * 	resolve independently of each other. Their code runs later, when the
+ * 	interpreter reaches the import, which runs a module's imports before the
+ * 	rest of it.
+ *
+ * Cached modules are shared, so which module an import statement loads isn't
+ * 	stored on it: a module a cached module imports may have changed since.
+ * 	Each loader links the imports it reaches, the imports of the modules it
+ * 	loads included, in a map of its own that goes with the compiled script.
+ *
+ * The script being compiled isn't a module, but it is running whenever one
+ * 	of its imports is, so the loader leaves imports of its file unlinked and
+ * 	the interpreter skips them, as it skips a module that is already running.
+ */
+final class ModuleLoader {
+	private static final ConcurrentHashMap<Path, Entry> cache = new ConcurrentHashMap<>();
+
+	private final ErrorReporter reporter;
+	private final boolean lazyFunctions;
+	// The file of the script being compiled, or null if it has none.
+	private final Path entry;
+	// Imports whose modules are loading, in the order they were found.
+	private final Deque<Pending> pending = new ArrayDeque<>();
+	// The module each import reached so far loads.
+	private final Map<Stmt.Import, Module> links = new IdentityHashMap<>();
+	// Whether an import had an invalid path.
+	private boolean invalidPath = false;
+
+	private static final class Entry {
+		final String hash;
+		final CompletableFuture<Module> module;
+
+		Entry(String hash, CompletableFuture<Module> module) {
+			this.hash = hash;
+			this.module = module;
+		}
+	}
+
+	private static final class Pending {
+		final Stmt.Import stmt;
+		final CompletableFuture<Module> module;
+
+		Pending(Stmt.Import stmt, CompletableFuture<Module> module) {
+			this.stmt = stmt;
+			this.module = module;
+		}
+	}
+
+	ModuleLoader(ErrorReporter reporter, boolean lazyFunctions, Path entry) {
+		this.reporter = reporter;
+		this.lazyFunctions = lazyFunctions;
+		this.entry = entry == null ? null : entry.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Starts loading the modules imported by the given statements. Paths are
+	 * 	relative to the directory of the importing file.
+	 */
+	void loadImports(List<? extends Stmt> statements, Path directory) {
+		for (Stmt statement : statements) {
+			if (statement instanceof Stmt.Import) {
+				load((Stmt.Import)statement, directory);
+			}
+		}
+	}
+
+	private void load(Stmt.Import stmt, Path directory) {
+		Path path;
+
+		try {
+			path = directory.resolve((String)stmt.path.literal).toAbsolutePath().normalize();
+		} catch (InvalidPathException e) {
+			reporter.error(stmt.path, "Can't import '" + stmt.path.literal + "', it isn't a valid path.");
+			invalidPath = true;
+			return;
+		}
+
+		if (path.equals(entry)) {
+			return;
+		}
+
+		CompletableFuture<Module> module = CompletableFuture
+			.supplyAsync(() -> read(path))
+			.thenCompose(source -> load(path, source));
+
+		pending.add(new Pending(stmt, module));
+	}
+
+	private CompletableFuture<Module> load(Path path, String source) {
+		String hash = hash(source);
+
+		Entry entry = cache.compute(path, (key, cached) -> {
+			if (cached != null && cached.hash.equals(hash)) {
+				return cached;
+			}
+
+			return new Entry(hash, CompletableFuture.supplyAsync(() -> compile(path, hash, source)));
+		});
+
+		return entry.module;
+	}
+
+	/**
+	 * Waits for the modules imported so far and for the modules they import in
+	 * 	turn, and links each import statement to its module. Returns whether
+	 * 	they all compiled, after reporting the errors of those that didn't.
+	 */
+	boolean await() {
+		Set<Module> linked = new HashSet<>();
+		boolean compiled = !invalidPath;
+
+		while (!pending.isEmpty()) {
+			Pending next = pending.poll();
+			Module module;
+
+			try {
+				module = next.module.join();
+			} catch (CompletionException e) {
+				reporter.error(next.stmt.path, "Can't read module '" + next.stmt.path.literal + "'.");
+				compiled = false;
+				continue;
+			}
+
+			if (module.program == null) {
+				module.errors.replay(reporter);
+				reporter.error(next.stmt.path, "Can't compile module '" + next.stmt.path.literal + "'.");
+				compiled = false;
+				continue;
+			}
+
+			links.put(next.stmt, module);
+
+			// Cycles and shared imports are followed once.
+			if (linked.add(module)) {
+				loadImports(module.imports, module.path.getParent());
+			}
+		}
+
+		return compiled;
+	}
+
+	// The modules the imports reached so far load.
+	Map<Stmt.Import, Module> links() {
+		return links;
+	}
+
+	private Module compile(Path path, String hash, String source) {
+		BufferedReporter errors = new BufferedReporter();
+		List<Stmt> statements = LoxEngine.parse(source, errors, lazyFunctions);
+
+		List<Expr> operations = statements == null ? null : LoxEngine.resolve(statements, errors);
+
+		if (operations == null) {
+			return new Module(path, hash, null, List.of(), errors);
+		}
+
+		List<Stmt.Import> imports = new ArrayList<>();
+
+		for (Stmt statement : statements) {
+			if (statement instanceof Stmt.Import) {
+				imports.add((Stmt.Import)statement);
+			}
+		}
+
+		return new Module(path, hash, new Program(statements, operations, Map.of()), imports, errors);
+	}
+
+	private static String read(Path path) {
+		try {
+			return new String(Files.readAllBytes(path), Charset.defaultCharset());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static String hash(String source) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+
+/**
+ * Destination of print statements. Text collects in a large char buffer
+ * 	that is written out when it fills, before a runtime error is reported and
+ * 	when a script finishes, rather than line by line. Integers are formatted
+ * 	straight into the buffer.
+ *
+ * A capacity of zero writes every line out as soon as it's printed, for
+ * 	callers that interleave Lox output with their own. Once a script is done,
+ * 	lines its fibers still print are written out right away too, as nothing
+ * 	would flush them before the process exits.
+ */
+final class OutputSink {
+	static final int DEFAULT_CAPACITY = 64 * 1024;
+
+	// Longest integer isPlainInteger() accepts, sign included.
+	private static final int MAX_INTEGER_LENGTH = 8;
+	private static final String NEWLINE = System.lineSeparator();
+
+	private final PrintWriter out;
+	private final char[] buffer;
+	private final boolean autoFlush;
+	// False between the end of a script and the start of the next one.
+	private boolean running = true;
+	private int count = 0;
+
+	OutputSink(PrintWriter out, int capacity) {
+		this.out = out;
+		this.autoFlush = capacity <= 0;
+		this.buffer = new char[Math.max(capacity, 256)];
+	}
+
+	/**
+	 * Whether Double.toString() prints the number as an integer followed by
+	 * 	".0", which Lox leaves out.
+	 */
+	static boolean isPlainInteger(double value) {
+		return value == Math.rint(value) && Math.abs(value) < 1e7
+			&& Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0);
+	}
+
+	// Fibers share their parent's sink, so lines are written whole.
+	synchronized void println(Object value) {
+		if (value instanceof Double && isPlainInteger((double)value)) {
+			writeInteger((int)(double)value);
+		} else {
+			write(Interpreter.stringify(value));
+		}
+
+		write(NEWLINE);
+
+		if (autoFlush || !running) {
+			flush();
+		}
+	}
+
+	synchronized void start() {
+		running = true;
+	}
+
+	// Writes out the script's output and any its fibers print from now on.
+	synchronized void finish() {
+		running = false;
+		flush();
+	}
+
+	synchronized void flush() {
+		flushBuffer();
+		out.flush();
+	}
+
+	private void writeInteger(int value) {
+		if (buffer.length - count < MAX_INTEGER_LENGTH) {
+			flushBuffer();
+		}
+
+		if (value < 0) {
+			buffer[count++] = '-';
+			value = -value;
+		}
+
+		int end = count + digits(value);
+		count = end;
+
+		do {
+			buffer[--end] = (char)('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+	}
+
+	private static int digits(int value) {
+		int digits = 1;
+
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+
+		return digits;
+	}
+
+	private void write(String text) {
+		int length = text.length();
+
+		if (length > buffer.length - count) {
+			flushBuffer();
+
+			if (length > buffer.length) {
+				out.write(text);
+				return;
+			}
+		}
+
+		text.getChars(0, length, buffer, count);
+		count += length;
+	}
+
+	private void flushBuffer() {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
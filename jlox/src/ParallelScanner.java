@@ -0,0 +1,126 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Scans large sources on the common {@link ForkJoinPool}. The source is cut
+ * 	into chunks just after a newline, and each chunk is scanned as if no
+ * 	string or block comment were open where it starts. When the previous
+ * 	chunk's last lexeme runs past that point the guess was wrong, and the
+ * 	chunk is scanned again from where that lexeme ended.
+ *
+ * A lexeme's line only depends on the newlines before it, so each chunk's
+ * 	first line comes from a prefix sum of the newlines in the chunks before
+ * 	it. Errors are held back per chunk in a {@link BufferedReporter} and only
+ * 	reported for the scans that are kept, so tokens and errors come out as
+ * 	from a single {@link Scanner}.
+ */
+final class ParallelScanner {
+	// Sources shorter than this are scanned on the calling thread.
+	static final int MIN_PARALLEL_LENGTH = 1 << 20;
+	private static final int MIN_CHUNK = 256 * 1024;
+
+	private ParallelScanner() {}
+
+	static List<Token> scanTokens(String source, ErrorReporter reporter) {
+		int parallelism = ForkJoinPool.commonPool().getParallelism();
+
+		if (source.length() < MIN_PARALLEL_LENGTH || parallelism < 2) {
+			return new Scanner(source, reporter).scanTokens();
+		}
+
+		int[] bounds = split(source, Math.max(MIN_CHUNK, source.length() / (parallelism * 4)));
+		int chunks = bounds.length - 1;
+
+		int[] newlines = new int[chunks];
+		IntStream.range(0, chunks).parallel()
+			.forEach(i -> newlines[i] = countNewlines(source, bounds[i], bounds[i + 1]));
+
+		int[] lines = new int[chunks + 1];
+		lines[0] = 1;
+
+		for (int i = 0; i < chunks; i++) {
+			lines[i + 1] = lines[i] + newlines[i];
+		}
+
+		Chunk[] scanned = new Chunk[chunks];
+		IntStream.range(0, chunks).parallel()
+			.forEach(i -> scanned[i] = new Chunk(source, bounds[i], bounds[i + 1], lines[i]));
+
+		List<Token> tokens = new ArrayList<>();
+		int position = 0;
+
+		for (int i = 0; i < chunks; i++) {
+			Chunk chunk = scanned[i];
+
+			if (chunk.from != position) {
+				// The previous chunk's last lexeme swallowed this one whole.
+				if (position >= bounds[i + 1]) {
+					continue;
+				}
+
+				int line = lines[i] + countNewlines(source, bounds[i], position);
+				chunk = new Chunk(source, position, bounds[i + 1], line);
+			}
+
+			chunk.errors.replay(reporter);
+			tokens.addAll(chunk.tokens);
+			position = chunk.position;
+		}
+
+		tokens.add(new Token(TokenType.EOF, "", null, lines[chunks]));
+		return tokens;
+	}
+
+	// The start of every chunk, then the end of the source.
+	private static int[] split(String source, int chunkSize) {
+		List<Integer> bounds = new ArrayList<>();
+		bounds.add(0);
+
+		int target = chunkSize;
+
+		while (target < source.length()) {
+			int newline = source.indexOf('\n', target);
+
+			if (newline == -1 || newline + 1 >= source.length()) {
+				break;
+			}
+
+			bounds.add(newline + 1);
+			target = newline + 1 + chunkSize;
+		}
+
+		bounds.add(source.length());
+		return bounds.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static int countNewlines(String source, int from, int to) {
+		int count = 0;
+
+		for (int i = from; i < to; i++) {
+			if (source.charAt(i) == '\n') {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private static final class Chunk {
+		final int from;
+		final List<Token> tokens;
+		final BufferedReporter errors = new BufferedReporter();
+		// Where the lexeme after this chunk's last one starts.
+		final int position;
+
+		Chunk(String source, int from, int to, int line) {
+			Scanner scanner = new Scanner(source, from, to, line, errors);
+			this.from = from;
+			this.tokens = scanner.scanRange();
+			this.position = scanner.position();
+		}
+	}
+}
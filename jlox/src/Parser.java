@@ -8,10 +8,21 @@ class Parser {
 	private static class ParseError extends RuntimeException {}
 
 	private final List<Token> tokens;
+	private final ErrorReporter reporter;
+	// Whether top-level function bodies are only brace-matched, see LazyBody.
+	private final boolean lazyFunctions;
 	private int current = 0;
+	// How many blocks, function bodies included, we're in.
+	private int depth = 0;
 
-	public Parser(List<Token> tokens) {
+	public Parser(List<Token> tokens, ErrorReporter reporter) {
+		this(tokens, reporter, false);
+	}
+
+	public Parser(List<Token> tokens, ErrorReporter reporter, boolean lazyFunctions) {
 		this.tokens = tokens;
+		this.reporter = reporter;
+		this.lazyFunctions = lazyFunctions;
 	}
 
 	public List<Stmt> parse() {
@@ -24,6 +35,15 @@ class Parser {
 		return statements;
 	}
 
+	// Parses the tokens of a LazyBody, which start after the opening brace.
+	List<Stmt> parseBody() {
+		try {
+			return block();
+		} catch (ParseError error) {
+			return new ArrayList<>();
+		}
+	}
+
 	private Stmt declaration() {
 		try {
 			if (match(TokenType.CLASS)) {
@@ -38,6 +58,10 @@ class Parser {
 				return varDeclaration();
 			}
 
+			if (match(TokenType.IMPORT)) {
+				return importDeclaration();
+			}
+
 			return statement();
 		}
 		catch (ParseError error) {
@@ -73,6 +97,20 @@ class Parser {
 		return new Stmt.Class(name, superclass, methods, statics);
 	}
 
+	private Stmt importDeclaration() {
+		Token keyword = previous();
+
+		// Modules define globals, and run once wherever they're imported.
+		if (depth > 0) {
+			error(keyword, "Can't import inside a block.");
+		}
+
+		Token path = consume(TokenType.STRING, "Expect module path after 'import'.");
+		consume(TokenType.SEMICOLON, "Expect ';' after module path.");
+
+		return new Stmt.Import(keyword, path);
+	}
+
 	private Stmt varDeclaration() {
 		Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
 
@@ -115,6 +153,7 @@ class Parser {
 	}
 
 	private Stmt forStatement() {
+		Token keyword = previous();
 		consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
 		
 		Stmt initializer;
@@ -154,7 +193,7 @@ class Parser {
 			condition = new Expr.Literal(true);
 		}
 
-		body = new Stmt.While(condition, body);
+		body = new Stmt.While(keyword, condition, body);
 
 		if (initializer != null) {
 			body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -198,13 +237,14 @@ class Parser {
 	}
 
 	private Stmt whileStatement() {
+		Token keyword = previous();
 		consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
 		Expr condition = expression();
 		consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
 
 		Stmt body = statement();
 
-		return new Stmt.While(condition, body);
+		return new Stmt.While(keyword, condition, body);
 	}
 
 	private Stmt expressionStatement() {
@@ -235,119 +275,223 @@ class Parser {
 		// 	been matched. This lets us contextualize the error message
 		// 	that we're in a function declaration context.
 		consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+
+		if (lazyFunctions && depth == 0 && kind.equals("function")) {
+			Stmt.Function function = new Stmt.Function(name, parameters, new ArrayList<>());
+			function.lazy = new LazyBody(skipBlock());
+			return function;
+		}
+
 		List<Stmt> body = block();
 		return new Stmt.Function(name, parameters, body);
 	}
 
 	private List<Stmt> block() {
 		List<Stmt> statements = new ArrayList<>();
+		depth++;
 
 		while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
 			statements.add(declaration());
 		}
 
+		depth--;
 		consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
 
 		return statements;
 	}
 
-	private Expr expression() {
-		// return parseBinaryRule(this::comma);
-		return parseBinaryRule(this::assignment);
-	}
+	// Skips to the brace closing the block, and returns the block's tokens
+	// 	up to and including that brace.
+	private List<Token> skipBlock() {
+		int start = current;
+		int braces = 1;
 
-	private Expr assignment() {
-		Expr expr = or();
+		while (!isAtEnd()) {
+			TokenType type = advance().type;
 
-		if (match(TokenType.EQUAL)) {
-			Token equals = previous();
-			Expr value = assignment();
-
-			if (expr instanceof Expr.Variable) {
-				Token name = ((Expr.Variable)expr).name;
-				return new Expr.Assign(name, value);
-			} else if (expr instanceof Expr.Get) {
-				Expr.Get get = (Expr.Get)expr;
-				return new Expr.Set(get.object, get.name, value);
+			if (type == TokenType.LEFT_BRACE) {
+				braces++;
+			} else if (type == TokenType.RIGHT_BRACE && --braces == 0) {
+				return tokens.subList(start, current);
 			}
-
-			error(equals, "Invalid assignment target.");
 		}
 
-		return expr;
+		throw error(peek(), "Expect '}' after block.");
 	}
 
-	private Expr or() {
-		return parseBinaryRule(this::and, TokenType.OR);
+	// Precedence levels, lowest to highest, as in clox's compiler.c.
+	private enum Precedence {
+		NONE,
+		COMMA,      // Challenge #6.1, binds loosest so call arguments aren't swallowed.
+		ASSIGNMENT, // =
+		OR,         // or
+		AND,        // and
+		TERNARY,    // ?: (Challenge #6.2)
+		EQUALITY,   // == !=
+		COMPARISON, // < > <= >=
+		TERM,       // + -
+		FACTOR,     // * /
+		UNARY,      // ! -
+		CALL,       // . () []
+		PRIMARY;
+
+		Precedence next() {
+			return values()[ordinal() + 1];
+		}
 	}
 
-	private Expr and() {
-		return parseBinaryRule(this::comma, TokenType.AND);
+	private interface PrefixRule {
+		Expr parse(Parser parser);
 	}
 
-	// Challenge #6.1, not sure what it implies to "drop" the operator token here ...
-	private Expr comma() {
-		return parseBinaryRule(this::ternary, TokenType.COMMA);
+	private interface InfixRule {
+		Expr parse(Parser parser, Expr left);
 	}
 
-	// Challenge #6.2
-	private Expr ternary() {
-		Expr expr = equality();
+	private static final class ParseRule {
+		final PrefixRule prefix;
+		final InfixRule infix;
+		final Precedence precedence;
 
-		if (match(TokenType.QUESTIONMARK)) {
-			Expr thenBranch = expression();
-			consume(TokenType.COLON, "Expect ':' after then branch of ternary expression.");
-			Expr elseBranch = ternary();
-			expr = new Expr.Conditional(expr, thenBranch, elseBranch);
+		ParseRule(PrefixRule prefix, InfixRule infix, Precedence precedence) {
+			this.prefix = prefix;
+			this.infix = infix;
+			this.precedence = precedence;
 		}
+	}
 
-		return expr;
+	private static final InfixRule BINARY = Parser::binary;
+	private static final ParseRule[] rules = new ParseRule[TokenType.values().length];
+
+	static {
+		ParseRule none = new ParseRule(null, null, Precedence.NONE);
+		Arrays.fill(rules, none);
+
+		rule(TokenType.LEFT_PAREN,    Parser::grouping, Parser::call,        Precedence.CALL);
+		rule(TokenType.LEFT_BRACKET,  null,             Parser::index,       Precedence.CALL);
+		rule(TokenType.DOT,           null,             Parser::dot,         Precedence.CALL);
+		rule(TokenType.COMMA,         null,             BINARY,              Precedence.COMMA);
+		rule(TokenType.EQUAL,         null,             Parser::assignment,  Precedence.ASSIGNMENT);
+		rule(TokenType.QUESTIONMARK,  null,             Parser::conditional, Precedence.TERNARY);
+		rule(TokenType.MINUS,         Parser::unary,    BINARY,              Precedence.TERM);
+		rule(TokenType.PLUS,          null,             BINARY,              Precedence.TERM);
+		rule(TokenType.SLASH,         null,             BINARY,              Precedence.FACTOR);
+		rule(TokenType.STAR,          null,             BINARY,              Precedence.FACTOR);
+		rule(TokenType.BANG,          Parser::unary,    null,                Precedence.NONE);
+		rule(TokenType.BANG_EQUAL,    null,             BINARY,              Precedence.EQUALITY);
+		rule(TokenType.EQUAL_EQUAL,   null,             BINARY,              Precedence.EQUALITY);
+		rule(TokenType.GREATER,       null,             BINARY,              Precedence.COMPARISON);
+		rule(TokenType.GREATER_EQUAL, null,             BINARY,              Precedence.COMPARISON);
+		rule(TokenType.LESS,          null,             BINARY,              Precedence.COMPARISON);
+		rule(TokenType.LESS_EQUAL,    null,             BINARY,              Precedence.COMPARISON);
+		rule(TokenType.IDENTIFIER,    Parser::variable, null,                Precedence.NONE);
+		rule(TokenType.STRING,        Parser::literal,  null,                Precedence.NONE);
+		rule(TokenType.NUMBER,        Parser::literal,  null,                Precedence.NONE);
+		rule(TokenType.AND,           null,             Parser::logical,     Precedence.AND);
+		rule(TokenType.OR,            null,             Parser::logical,     Precedence.OR);
+		rule(TokenType.FALSE,         Parser::literal,  null,                Precedence.NONE);
+		rule(TokenType.NIL,           Parser::literal,  null,                Precedence.NONE);
+		rule(TokenType.TRUE,          Parser::literal,  null,                Precedence.NONE);
+		rule(TokenType.SUPER,         Parser::superAccess, null,             Precedence.NONE);
+		rule(TokenType.THIS,          Parser::self,     null,                Precedence.NONE);
 	}
-	
-	private Expr equality() {
-		return parseBinaryRule(this::comparison, TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL);
+
+	private static void rule(TokenType type, PrefixRule prefix, InfixRule infix, Precedence precedence) {
+		rules[type.ordinal()] = new ParseRule(prefix, infix, precedence);
 	}
 
-	private Expr comparison() {
-		return parseBinaryRule(this::term, TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL);
+	private static ParseRule getRule(TokenType type) {
+		return rules[type.ordinal()];
 	}
 
-	private Expr term() {
-		return parseBinaryRule(this::factor, TokenType.MINUS, TokenType.PLUS);
+	private Expr expression() {
+		return parsePrecedence(Precedence.COMMA);
 	}
 
-	private Expr factor() {
-		return parseBinaryRule(this::unary, TokenType.SLASH, TokenType.STAR);
+	// Parses an expression whose operators all bind at least as tightly as
+	// 	the given precedence. Each nested operand costs one call, however many
+	// 	precedence levels it skips.
+	private Expr parsePrecedence(Precedence precedence) {
+		PrefixRule prefix = getRule(peek().type).prefix;
+
+		if (prefix == null) {
+			throw missingOperand();
+		}
+
+		advance();
+		Expr expr = prefix.parse(this);
+
+		while (precedence.compareTo(getRule(peek().type).precedence) <= 0) {
+			advance();
+			expr = getRule(previous().type).infix.parse(this, expr);
+		}
+
+		return expr;
 	}
 
-	private Expr unary() {
-		if (match(TokenType.BANG, TokenType.MINUS)) {
-			Token operator = previous();
-			Expr right = unary();
-			return new Expr.Unary(operator, right);
+	// Error productions: a binary operator with no left operand. Its right
+	// 	operand is still parsed, to report any errors in it too.
+	private ParseError missingOperand() {
+		ParseRule rule = getRule(peek().type);
+
+		if (rule.infix == BINARY) {
+			ParseError err = error(advance(), "Missing left-hand operand.");
+			parsePrecedence(rule.precedence);
+			return err;
 		}
 
-		return call();
+		// We are on a token that cannot start an expression ...
+		return error(peek(), "Expect expression.");
 	}
 
-	private Expr call() {
-		Expr expr = primary();
+	private Expr assignment(Expr target) {
+		Token equals = previous();
+		// Right-associative.
+		Expr value = parsePrecedence(Precedence.ASSIGNMENT);
 
-		while (true) {
-			if (match(TokenType.LEFT_PAREN)) {
-				expr = finishCall(expr);
-			} else if (match(TokenType.DOT)) {
-				Token name = consume(TokenType.IDENTIFIER, "Expect property name after '.'");
-				expr = new Expr.Get(expr, name);
-			} else {
-				break;
-			}
+		if (target instanceof Expr.Variable) {
+			Token name = ((Expr.Variable)target).name;
+			return new Expr.Assign(name, value);
+		} else if (target instanceof Expr.Get) {
+			Expr.Get get = (Expr.Get)target;
+			return new Expr.Set(get.object, get.name, value);
+		} else if (target instanceof Expr.Index) {
+			Expr.Index index = (Expr.Index)target;
+			return new Expr.IndexSet(index.object, index.bracket, index.index, value);
 		}
 
-		return expr;
+		error(equals, "Invalid assignment target.");
+		return target;
+	}
+
+	private Expr binary(Expr left) {
+		Token operator = previous();
+		Expr right = parsePrecedence(getRule(operator.type).precedence.next());
+		return new Expr.Binary(left, operator, right);
+	}
+
+	private Expr logical(Expr left) {
+		Token operator = previous();
+		Expr right = parsePrecedence(getRule(operator.type).precedence.next());
+		return new Expr.Logical(left, operator, right);
+	}
+
+	// Challenge #6.2
+	private Expr conditional(Expr condition) {
+		Expr thenBranch = expression();
+		consume(TokenType.COLON, "Expect ':' after then branch of ternary expression.");
+		// Right-associative.
+		Expr elseBranch = parsePrecedence(Precedence.TERNARY);
+		return new Expr.Conditional(condition, thenBranch, elseBranch);
+	}
+
+	private Expr unary() {
+		Token operator = previous();
+		Expr right = parsePrecedence(Precedence.UNARY);
+		return new Expr.Unary(operator, right);
 	}
 
-	private Expr finishCall(Expr callee) {
+	private Expr call(Expr callee) {
 		List<Expr> arguments = new ArrayList<>();
 
 		if (!check(TokenType.RIGHT_PAREN)) {
@@ -356,7 +500,7 @@ class Parser {
 					error(peek(), "Can't have more than 255 arguments.");
 				}
 
-				arguments.add(expression());
+				arguments.add(parsePrecedence(Precedence.ASSIGNMENT));
 			} while (match(TokenType.COMMA));
 		}
 
@@ -365,81 +509,50 @@ class Parser {
 		return new Expr.Call(callee, paren, arguments);
 	}
 
-	private Expr primary() {
-		if (match(TokenType.FALSE)) {
-			return new Expr.Literal(false);
-		}
-		if (match(TokenType.TRUE)) {
-			return new Expr.Literal(true);
-		}
-		if (match(TokenType.NIL)) {
-			return new Expr.Literal(null);
-		}
-
-		if (match(TokenType.NUMBER, TokenType.STRING)) {
-			return new Expr.Literal(previous().literal);
-		}
-
-		if (match(TokenType.SUPER)) {
-			Token keyword = previous();
-			consume(TokenType.DOT, "Expect '.' after 'super'.");
-			Token method = consume(TokenType.IDENTIFIER, "Expect superclass method name.");
-
-			return new Expr.Super(keyword, method);
-		}
+	private Expr dot(Expr object) {
+		Token name = consume(TokenType.IDENTIFIER, "Expect property name after '.'");
+		return new Expr.Get(object, name);
+	}
 
-		if (match(TokenType.THIS)) {
-			return new Expr.This(previous());
-		}
+	private Expr index(Expr object) {
+		Expr index = expression();
+		Token bracket = consume(TokenType.RIGHT_BRACKET, "Expect ']' after index.");
+		return new Expr.Index(object, bracket, index);
+	}
 
-		if (match(TokenType.IDENTIFIER)) {
-			return new Expr.Variable(previous());
-		}
+	private Expr grouping() {
+		Expr expr = expression();
+		consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+		return new Expr.Grouping(expr);
+	}
 
-		if (match(TokenType.LEFT_PAREN)) {
-			Expr expr = expression();
-			consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-			return new Expr.Grouping(expr);
+	private Expr literal() {
+		switch (previous().type) {
+			case FALSE:
+				return new Expr.Literal(false);
+			case TRUE:
+				return new Expr.Literal(true);
+			case NIL:
+				return new Expr.Literal(null);
+			default:
+				return new Expr.Literal(previous().literal);
 		}
-
-		// Error Productions
-		checkForBinaryRuleError(this::comma, TokenType.COMMA);
-
-		checkForBinaryRuleError(this::equality, TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL);
-
-		checkForBinaryRuleError(this::comparison, TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL);
-
-		checkForBinaryRuleError(this::term, TokenType.PLUS);
-
-		checkForBinaryRuleError(this::factor, TokenType.SLASH, TokenType.STAR);
-
-		// We are on a token that cannot start an expression ...
-		throw error(peek(), "Expect expression.");
 	}
 
+	private Expr superAccess() {
+		Token keyword = previous();
+		consume(TokenType.DOT, "Expect '.' after 'super'.");
+		Token method = consume(TokenType.IDENTIFIER, "Expect superclass method name.");
 
-	private void checkForBinaryRuleError(BinaryRuleParser op, TokenType... types) {
-		if (match(types)) {
-			ParseError err = error(previous(), "Missing left-hand operand.");
-			op.parse();
-			throw err;
-		}
+		return new Expr.Super(keyword, method);
 	}
 
-	private Expr parseBinaryRule(BinaryRuleParser op, TokenType... types) {
-		Expr expr = op.parse();
-
-		while (match(types)) {
-			Token operator = previous();
-			Expr right = op.parse();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-		
-		return expr;
+	private Expr self() {
+		return new Expr.This(previous());
 	}
 
-	private interface BinaryRuleParser {
-		public Expr parse();
+	private Expr variable() {
+		return new Expr.Variable(previous());
 	}
 
 	private boolean match(TokenType... types) {
@@ -488,7 +601,7 @@ class Parser {
 	}
 
 	private ParseError error(Token token, String message) {
-		Lox.error(token, message);
+		reporter.error(token, message);
 		return new ParseError();
 	}
 
@@ -504,6 +617,7 @@ class Parser {
 				case CLASS:
 				case FUN:
 				case VAR:
+				case IMPORT:
 				case FOR:
 				case IF:
 				case WHILE:
@@ -0,0 +1,28 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A scanned, parsed and resolved script. Resolution results are stored on the
+ * 	AST nodes themselves, and running doesn't write to the tree, so a program
+ * 	can be run by any number of interpreters concurrently. What a run learns
+ * 	about the program, like its {@link TypeProfile}, is kept per run instead.
+ * 	Lazily parsed bodies are the exception: the first call resolves them, under
+ * 	a lock.
+ */
+public final class Program {
+	final List<Stmt> statements;
+	// The operations that check their operands' types, see TypeInferrer.
+	final List<Expr> operations;
+	// The module each import statement loads, those of imported modules
+	// 	included, as the ModuleLoader linked them for this program.
+	final Map<Stmt.Import, Module> modules;
+
+	Program(List<Stmt> statements, List<Expr> operations, Map<Stmt.Import, Module> modules) {
+		this.statements = Collections.unmodifiableList(statements);
+		this.operations = operations;
+		this.modules = Collections.unmodifiableMap(modules);
+	}
+}
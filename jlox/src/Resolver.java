@@ -1,18 +1,77 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-	private final Interpreter interpreter;
-	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+	private final ErrorReporter reporter;
+	private final Stack<Map<String, Local>> scopes = new Stack<>();
+	// Every scope of a function, blocks included, shares the function's frame.
+	// 	These count the slots in use in the current frame and the most it needed.
+	private int slotCount = 0;
+	private int maxSlots = 0;
+	// The slots of the current frame holding a variable some closure captures.
+	private Set<Integer> capturedSlots = new HashSet<>();
 	private FunctionType currentFunction = FunctionType.NONE;
 	private ClassType currentClass = ClassType.NONE;
 
-	public Resolver(Interpreter interpreter) {
-		this.interpreter = interpreter;
+	// Functions being resolved, innermost last.
+	private final Stack<FunctionScope> functions = new Stack<>();
+
+	// For purity analysis: the functions that may be pure, the functions
+	// 	declared in the global scope, how often each global is declared and
+	// 	the globals assigned to.
+	private final List<FunctionScope> candidates = new ArrayList<>();
+	private final Map<String, Stmt.Function> globalFunctions = new HashMap<>();
+	private final Map<String, Integer> globalDeclarations = new HashMap<>();
+	private final Set<String> assignedGlobals = new HashSet<>();
+
+	public Resolver(ErrorReporter reporter) {
+		this.reporter = reporter;
+	}
+
+	// A local variable and its slot in the frame of the function declaring it.
+	private static final class Local {
+		final int slot;
+		boolean defined = false;
+		boolean captured = false;
+
+		Local(int slot) {
+			this.slot = slot;
+		}
+	}
+
+	// A function being resolved and the variables it captures, like the
+	// 	upvalues array of clox's Compiler.
+	private static final class FunctionScope {
+		final Stmt.Function function;
+		// Index in scopes of the function's parameter scope.
+		final int firstScope;
+		final Map<Local, Integer> upvalues = new HashMap<>();
+		final List<Boolean> upvalueIsLocal = new ArrayList<>();
+		final List<Integer> upvalueIndexes = new ArrayList<>();
+		// Whether the body does something other than compute a result from
+		// 	its arguments, not counting the globals it reads.
+		boolean impure = false;
+		final Set<String> globalsRead = new HashSet<>();
+
+		FunctionScope(Stmt.Function function, int firstScope) {
+			this.function = function;
+			this.firstScope = firstScope;
+		}
+	}
+
+	// Where a variable is found from the code referencing it: in a slot of the
+	// 	current frame, in one of the function's upvalues, or else in the globals.
+	private static final class Binding {
+		int scope = -1;
+		int slot = -1;
+		int upvalue = -1;
 	}
 
 	private enum FunctionType {
@@ -34,10 +93,82 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		}
 	}
 
+	/**
+	 * Marks the functions resolved so far that are pure. A pure function
+	 * 	doesn't print, set properties or elements, or assign to variables it
+	 * 	doesn't own, and only reads globals that are pure functions, declared
+	 * 	once and never assigned to. It calls nothing else, and declares no
+	 * 	functions or classes, so its result only depends on its arguments.
+	 *
+	 * A lazily parsed function isn't a candidate until its first call parses
+ * 	it. Its body is then resolved and analysed on its own, without the rest
+ * 	of the program, so it is pure only if it reads no globals but itself.
+	 */
+	public void analyzePurity() {
+		for (FunctionScope candidate : candidates) {
+			candidate.function.pure = !candidate.impure;
+			// Rebinding one of these later makes the function's purity stale.
+			candidate.function.globalsRead = new ArrayList<>(candidate.globalsRead);
+		}
+
+		// Mutually recursive functions are pure unless proven otherwise.
+		boolean changed = true;
+
+		while (changed) {
+			changed = false;
+
+			for (FunctionScope candidate : candidates) {
+				if (candidate.function.pure && !readsPureGlobals(candidate)) {
+					candidate.function.pure = false;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private boolean readsPureGlobals(FunctionScope candidate) {
+		for (String name : candidate.globalsRead) {
+			Stmt.Function function = globalFunctions.get(name);
+
+			if (function == null || !function.pure || globalDeclarations.get(name) > 1 || assignedGlobals.contains(name)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// The body of the current function has a side effect.
+	private void impure() {
+		if (!functions.isEmpty()) {
+			functions.peek().impure = true;
+		}
+	}
+
+	private void declareGlobal(Token name) {
+		if (scopes.isEmpty()) {
+			globalDeclarations.merge(name.lexeme, 1, Integer::sum);
+		}
+	}
+
 	private void resolveFunction(Stmt.Function function, FunctionType type) {
 		FunctionType enclosingFunction = currentFunction;
 		currentFunction = type;
 
+		FunctionScope scope = new FunctionScope(function, scopes.size());
+		functions.push(scope);
+
+		// A lazily parsed body is only known once the LazyBody has parsed it.
+		if (type == FunctionType.FUNCTION && (function.lazy == null || function.lazy.isParsed())) {
+			candidates.add(scope);
+		}
+
+		int enclosingSlotCount = slotCount;
+		int enclosingMaxSlots = maxSlots;
+		Set<Integer> enclosingCapturedSlots = capturedSlots;
+		slotCount = 0;
+		maxSlots = 0;
+		capturedSlots = new HashSet<>();
 		beginScope();
 
 		for (Token param : function.params) {
@@ -45,31 +176,80 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			define(param);
 		}
 
+		// Methods get their receiver in the slot after the parameters.
+		if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+			defineImplicit("this");
+		}
+
 		resolve(function.body);
 		endScope();
+		functions.pop();
+
+		function.locals = maxSlots;
+		function.capturedSlots = capturedSlots(maxSlots);
+		slotCount = enclosingSlotCount;
+		maxSlots = enclosingMaxSlots;
+		capturedSlots = enclosingCapturedSlots;
+
+		function.upvalueIsLocal = new boolean[scope.upvalueIsLocal.size()];
+		function.upvalueIndexes = new int[scope.upvalueIndexes.size()];
+
+		for (int i = 0; i < function.upvalueIndexes.length; i++) {
+			function.upvalueIsLocal[i] = scope.upvalueIsLocal.get(i);
+			function.upvalueIndexes[i] = scope.upvalueIndexes.get(i);
+		}
 		currentFunction = enclosingFunction;
 	}
 
 	private void beginScope() {
-		scopes.push(new HashMap<String, Boolean>());
+		scopes.push(new HashMap<String, Local>());
 	}
 
+	// The slots of a finished scope are free for the next one. A slot stays
+	// 	captured when reused, which is only conservative.
 	private void endScope() {
-		scopes.pop();
+		Map<String, Local> scope = scopes.pop();
+		slotCount -= scope.size();
+
+		for (Local local : scope.values()) {
+			if (local.captured) {
+				capturedSlots.add(local.slot);
+			}
+		}
 	}
 
-	private void declare(Token name) {
+	private boolean[] capturedSlots(int locals) {
+		boolean[] captured = new boolean[locals];
+
+		for (int slot : capturedSlots) {
+			captured[slot] = true;
+		}
+
+		return captured;
+	}
+
+	private Local newLocal() {
+		Local local = new Local(slotCount++);
+		maxSlots = Math.max(maxSlots, slotCount);
+		return local;
+	}
+
+	// Returns the slot the variable gets in the current scope, or -1 for a global.
+	private int declare(Token name) {
 		if (scopes.isEmpty()) {
-			return;
+			return -1;
 		}
 
-		Map<String, Boolean> scope = scopes.peek();
+		Map<String, Local> scope = scopes.peek();
 
 		if (scope.containsKey(name.lexeme)) {
-			Lox.error(name, "A variable with the name: " + name.lexeme + " already exists in this scope.");
+			reporter.error(name, "A variable with the name: " + name.lexeme + " already exists in this scope.");
+			return scope.get(name.lexeme).slot;
 		}
 
-		scope.put(name.lexeme, false);
+		Local local = newLocal();
+		scope.put(name.lexeme, local);
+		return local.slot;
 	}
 
 	private void define(Token name) {
@@ -77,24 +257,85 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			return;
 		}
 
-		scopes.peek().put(name.lexeme, true);
+		scopes.peek().get(name.lexeme).defined = true;
 	}
-	
-	private void resolveLocal(Expr expr, Token name) {
+
+	private void defineImplicit(String name) {
+		Local local = newLocal();
+		local.defined = true;
+		scopes.peek().put(name, local);
+	}
+
+	private Binding resolveLocal(Token name) {
+		Binding binding = new Binding();
+
 		for (int i = scopes.size() - 1; i >= 0; i--) {
-			if (scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr, scopes.size() - 1 - i );
-				return;
+			Local local = scopes.get(i).get(name.lexeme);
+
+			if (local == null) {
+				continue;
 			}
+
+			binding.scope = i;
+
+			if (functions.isEmpty() || i >= functions.peek().firstScope) {
+				binding.slot = local.slot;
+			} else {
+				binding.upvalue = addUpvalue(functions.size() - 1, i, local);
+
+				local.captured = true;
+			}
+
+			break;
 		}
+
+		return binding;
 	}
 
+	// Returns the index of the upvalue through which the function at the given
+	// 	level reaches a local declared in an enclosing scope. The closure is
+	// 	created in the enclosing code, which either has that local in one of its
+	// 	own scopes or in an upvalue of its own.
+	private int addUpvalue(int level, int scope, Local local) {
+		FunctionScope function = functions.get(level);
+		Integer index = function.upvalues.get(local);
+
+		if (index != null) {
+			return index;
+		}
+
+		int enclosingFirstScope = level == 0 ? 0 : functions.get(level - 1).firstScope;
+
+		if (scope >= enclosingFirstScope) {
+			function.upvalueIsLocal.add(true);
+			function.upvalueIndexes.add(local.slot);
+		} else {
+			function.upvalueIsLocal.add(false);
+			function.upvalueIndexes.add(addUpvalue(level - 1, scope, local));
+		}
+
+		index = function.upvalueIndexes.size() - 1;
+		function.upvalues.put(local, index);
+		return index;
+	}
+
+
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
+		boolean topLevel = scopes.isEmpty();
+
 		beginScope();
 		resolve(stmt.statements);
 		endScope();
 
+		// Only top-level blocks get a frame, sized for the blocks nested in them.
+		if (topLevel) {
+			stmt.locals = maxSlots;
+			stmt.capturedSlots = capturedSlots(maxSlots);
+			maxSlots = 0;
+			capturedSlots = new HashSet<>();
+		}
+
 		return null;
 	}
 
@@ -102,25 +343,25 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitClassStmt(Stmt.Class stmt) {
 		ClassType enclosingClass = currentClass;
 		currentClass = ClassType.CLASS;
+		impure();
+		declareGlobal(stmt.name);
 
-		declare(stmt.name);
+		stmt.slot = declare(stmt.name);
 		define(stmt.name);
 
 		if (stmt.superclass != null) {
 			currentClass = ClassType.SUBCLASS;
 			if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-				Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
+				reporter.error(stmt.superclass.name, "A class can't inherit from itself.");
 			}
 
 			resolve(stmt.superclass);
 
 			beginScope();
-			scopes.peek().put("super", true);
+			defineImplicit("super");
+			stmt.superSlot = scopes.peek().get("super").slot;
 		}
 
-		beginScope();
-		scopes.peek().put("this", true);
-		
 		for (Stmt.Function method : stmt.statics) {
 			resolveFunction(method, FunctionType.METHOD);
 		}
@@ -135,10 +376,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			resolveFunction(method, declaration);
 		}
 
-		endScope();
-
 		if (stmt.superclass != null) {
 			endScope();
+
+			// A top-level class gets a frame of its own for 'super', in slot 0.
+			if (scopes.isEmpty()) {
+				maxSlots = 0;
+			}
 		}
 
 		currentClass = enclosingClass;
@@ -155,7 +399,15 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitFunctionStmt(Stmt.Function stmt) {
-		declare(stmt.name);
+		// Closures may share state between calls.
+		impure();
+		declareGlobal(stmt.name);
+
+		if (scopes.isEmpty()) {
+			globalFunctions.put(stmt.name.lexeme, stmt);
+		}
+
+		stmt.slot = declare(stmt.name);
 		define(stmt.name);
 
 		resolveFunction(stmt, FunctionType.FUNCTION);
@@ -175,8 +427,14 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		return null;
+	}
+
 	@Override
 	public Void visitPrintStmt(Stmt.Print stmt) {
+		impure();
 		resolve(stmt.expression);
 
 		return null;
@@ -185,12 +443,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitReturnStmt(Stmt.Return stmt) {
 		if (currentFunction == FunctionType.NONE) {
-			Lox.error(stmt.keyword, "Can't return from top-level code.");
+			reporter.error(stmt.keyword, "Can't return from top-level code.");
 		}
 
 		if (stmt.value != null) {
 			if (currentFunction == FunctionType.INITIALIZER) {
-				Lox.error(stmt.keyword, "Can't return a value from an initializer.");
+				reporter.error(stmt.keyword, "Can't return a value from an initializer.");
 			}
 
 			resolve(stmt.value);
@@ -209,7 +467,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitVarStmt(Stmt.Var stmt) {
-		declare(stmt.name);
+		declareGlobal(stmt.name);
+		stmt.slot = declare(stmt.name);
 
 		if (stmt.initializer != null) {
 			resolve(stmt.initializer);
@@ -223,8 +482,19 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitAssignExpr(Expr.Assign expr) {
 		resolve(expr.value);
-		resolveLocal(expr, expr.name);
-		
+
+		Binding binding = resolveLocal(expr.name);
+		expr.slot = binding.slot;
+		expr.upvalue = binding.upvalue;
+
+		if (binding.slot == -1) {
+			impure();
+		}
+
+		if (binding.scope == -1) {
+			assignedGlobals.add(expr.name.lexeme);
+		}
+
 		return null;
 	}
 
@@ -240,6 +510,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitCallExpr(Expr.Call expr) {
 		resolve(expr.callee);
 
+		// Only calls to globals, which have to be pure functions, keep a
+		// 	function pure.
+		if (!(expr.callee instanceof Expr.Variable) || ((Expr.Variable)expr.callee).slot != -1 || ((Expr.Variable)expr.callee).upvalue != -1) {
+			impure();
+		}
+
 		for (Expr argument : expr.arguments) {
 			resolve(argument);
 		}
@@ -261,6 +537,24 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 	
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		resolve(expr.object);
+		resolve(expr.index);
+
+		return null;
+	}
+
+	@Override
+	public Void visitIndexSetExpr(Expr.IndexSet expr) {
+		impure();
+		resolve(expr.value);
+		resolve(expr.object);
+		resolve(expr.index);
+
+		return null;
+	}
+
 	@Override
 	public Void visitLiteralExpr(Expr.Literal expr) {
 		return null;
@@ -276,6 +570,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitSetExpr(Expr.Set expr) {
+		impure();
 		resolve(expr.value);
 		resolve(expr.object);
 
@@ -285,12 +580,19 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitSuperExpr(Expr.Super expr) {
 		if (currentClass == ClassType.NONE) {
-			Lox.error(expr.keyword, "Can't use 'super' outside of a class.");
+			reporter.error(expr.keyword, "Can't use 'super' outside of a class.");
 		} else if (currentClass != ClassType.SUBCLASS) {
-			Lox.error(expr.keyword, "Can't use 'super' in a class without a superclass.");
+			reporter.error(expr.keyword, "Can't use 'super' in a class without a superclass.");
 		}
 
-		resolveLocal(expr, expr.keyword);
+		Binding binding = resolveLocal(expr.keyword);
+		expr.slot = binding.slot;
+		expr.upvalue = binding.upvalue;
+
+		if (currentClass == ClassType.SUBCLASS) {
+			expr.receiver = new Expr.This(new Token(TokenType.THIS, "this", null, expr.keyword.line));
+			resolve(expr.receiver);
+		}
 
 		return null;
 	}
@@ -298,10 +600,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitThisExpr(Expr.This expr) {
 		if (currentClass == ClassType.NONE) {
-			Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+			reporter.error(expr.keyword, "Can't use 'this' outside of a class.");
 		}
 
-		resolveLocal(expr, expr.keyword);
+		Binding binding = resolveLocal(expr.keyword);
+		expr.slot = binding.slot;
+		expr.upvalue = binding.upvalue;
 
 		return null;
 	}
@@ -324,11 +628,20 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
-		if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-			Lox.error(expr.name, "Can't read local variable in its own initializer.");
+		if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme) && !scopes.peek().get(expr.name.lexeme).defined) {
+			reporter.error(expr.name, "Can't read local variable in its own initializer.");
 		}
 
-		resolveLocal(expr, expr.name);
+		Binding binding = resolveLocal(expr.name);
+		expr.slot = binding.slot;
+		expr.upvalue = binding.upvalue;
+
+		if (binding.upvalue != -1) {
+			// A captured variable may change between calls.
+			impure();
+		} else if (binding.scope == -1 && !functions.isEmpty()) {
+			functions.peek().globalsRead.add(expr.name.lexeme);
+		}
 
 		return null;
 	}
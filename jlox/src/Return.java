@@ -1,10 +1,11 @@
 package com.craftinginterpreters.lox;
 
+// Each interpreter throws the same instance for every return statement, so
+// 	returning allocates nothing. It's always caught by the innermost call.
 class Return extends RuntimeException {
-	final Object value;
+	Object value;
 
-	Return(Object value) {
+	Return() {
 		super(null, null, false, false);
-		this.value = value;
 	}
 }
@@ -0,0 +1,155 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A lazily concatenated Lox string. Concatenating onto a rope is O(1); the
+ * 	characters are only copied once, when something needs the flat text
+ * 	(printing, equality, hashing), and the result is cached.
+ *
+ * Lox strings are either a {@link String} or a {@link Rope}, and the two
+ * 	are interchangeable as far as scripts can tell. Not to Java, though: a
+ * 	rope only equals other ropes, as a String only equals Strings, so code
+ * 	comparing or hashing Lox strings {@link #flatten}s them first.
+ */
+final class Rope implements CharSequence {
+	// Below this length copying is cheaper than allocating a node.
+	private static final int MIN_ROPE_LENGTH = 64;
+
+	private volatile CharSequence left;
+	private volatile CharSequence right;
+	private volatile String flat;
+	private final int length;
+
+	private Rope(CharSequence left, CharSequence right) {
+		this.left = left;
+		this.right = right;
+		this.length = left.length() + right.length();
+	}
+
+	static boolean isString(Object object) {
+		return object instanceof String || object instanceof Rope;
+	}
+
+	static CharSequence concat(CharSequence left, CharSequence right) {
+		if (left.length() == 0) {
+			return right;
+		}
+
+		if (right.length() == 0) {
+			return left;
+		}
+
+		if (left.length() + right.length() < MIN_ROPE_LENGTH) {
+			return left.toString().concat(right.toString());
+		}
+
+		return new Rope(left, right);
+	}
+
+	/**
+	 * Replaces a rope by its flat {@link String}, leaving other values alone.
+	 */
+	static Object flatten(Object object) {
+		if (object instanceof Rope) {
+			return object.toString();
+		}
+
+		return object;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().substring(start, end);
+	}
+
+	@Override
+	public String toString() {
+		String text = flat;
+
+		if (text == null) {
+			synchronized (this) {
+				text = flat;
+
+				if (text == null) {
+					text = build();
+					flat = text;
+
+					// The pieces are no longer needed once the flat text is cached.
+					left = null;
+					right = null;
+				}
+			}
+		}
+
+		return text;
+	}
+
+	// Walks the tree with an explicit stack, since ropes built in a loop are
+	// 	as deep as the number of iterations.
+	private String build() {
+		StringBuilder builder = new StringBuilder(length);
+		Deque<CharSequence> pending = new ArrayDeque<>();
+		pending.push(right);
+		pending.push(left);
+
+		while (!pending.isEmpty()) {
+			CharSequence piece = pending.pop();
+
+			if (!(piece instanceof Rope)) {
+				builder.append(piece);
+				continue;
+			}
+
+			Rope rope = (Rope)piece;
+			String text = rope.flat;
+
+			if (text == null) {
+				CharSequence ropeLeft = rope.left;
+				CharSequence ropeRight = rope.right;
+
+				if (ropeLeft != null && ropeRight != null) {
+					pending.push(ropeRight);
+					pending.push(ropeLeft);
+					continue;
+				}
+
+				// Flattened concurrently between the two reads.
+				text = rope.flat;
+			}
+
+			builder.append(text);
+		}
+
+		return builder.toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof Rope) || ((Rope)other).length != length) {
+			return false;
+		}
+
+		return toString().equals(other.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
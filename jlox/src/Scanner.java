@@ -1,9 +1,8 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.function.Function;
 
 // import com.craftinginterpreters.lox.TokenType.*;
@@ -11,66 +10,147 @@ import java.util.function.Function;
 
 class Scanner {
 	private final String source;
+	private final ErrorReporter reporter;
 	private final List<Token> tokens = new ArrayList<>();
+	// Lexemes that start at or after this are left to whoever scans on.
+	private final int end;
 	private int start = 0;
 	private int current = 0;
 	private int line = 1;
-	private static final Map<String, TokenType> keywords;
+
+	// Character classes of the ASCII range, for dispatch in scanToken().
+	// 	Everything else is OTHER.
+	private static final byte OTHER = 0;
+	private static final byte SPACE = 1;
+	private static final byte DIGIT = 2;
+	private static final byte ALPHA = 3;
+	private static final byte SINGLE = 4;
+
+	private static final byte[] charClasses = new byte[128];
+
+	// The token of each SINGLE character.
+	private static final TokenType[] singleTokens = new TokenType[128];
+
+	// Tokens whose lexeme is always the same, so scanning them doesn't
+	// 	allocate a substring of the source.
+	private static final String[] lexemes = new String[TokenType.values().length];
 
 	static {
-		keywords = new HashMap<>();
-		keywords.put("and", TokenType.AND);
-		keywords.put("class", TokenType.CLASS);
-		keywords.put("else", TokenType.ELSE);
-		keywords.put("false", TokenType.FALSE);
-		keywords.put("for", TokenType.FOR);
-		keywords.put("fun", TokenType.FUN);
-		keywords.put("if", TokenType.IF);
-		keywords.put("nil", TokenType.NIL);
-		keywords.put("or", TokenType.OR);
-		keywords.put("print", TokenType.PRINT);
-		keywords.put("return", TokenType.RETURN);
-		keywords.put("super", TokenType.SUPER);
-		keywords.put("this", TokenType.THIS);
-		keywords.put("true", TokenType.TRUE);
-		keywords.put("var", TokenType.VAR);
-		keywords.put("while", TokenType.WHILE);
+		charClasses[' '] = SPACE;
+		charClasses['\r'] = SPACE;
+		charClasses['\t'] = SPACE;
+
+		for (char c = '0'; c <= '9'; c++) {
+			charClasses[c] = DIGIT;
+		}
+
+		for (char c = 'a'; c <= 'z'; c++) {
+			charClasses[c] = ALPHA;
+			charClasses[Character.toUpperCase(c)] = ALPHA;
+		}
+
+		charClasses['_'] = ALPHA;
+
+		single('(', TokenType.LEFT_PAREN);
+		single(')', TokenType.RIGHT_PAREN);
+		single('{', TokenType.LEFT_BRACE);
+		single('}', TokenType.RIGHT_BRACE);
+		single('[', TokenType.LEFT_BRACKET);
+		single(']', TokenType.RIGHT_BRACKET);
+		single(',', TokenType.COMMA);
+		single('.', TokenType.DOT);
+		single('-', TokenType.MINUS);
+		single('+', TokenType.PLUS);
+		single(';', TokenType.SEMICOLON);
+		single('*', TokenType.STAR);
+		// Need lookbehind to handle (error out) freefloating ':' without a ternary?
+		single(':', TokenType.COLON);
+		single('?', TokenType.QUESTIONMARK);
+
+		lexemes[TokenType.SLASH.ordinal()] = "/";
+		lexemes[TokenType.BANG.ordinal()] = "!";
+		lexemes[TokenType.BANG_EQUAL.ordinal()] = "!=";
+		lexemes[TokenType.EQUAL.ordinal()] = "=";
+		lexemes[TokenType.EQUAL_EQUAL.ordinal()] = "==";
+		lexemes[TokenType.GREATER.ordinal()] = ">";
+		lexemes[TokenType.GREATER_EQUAL.ordinal()] = ">=";
+		lexemes[TokenType.LESS.ordinal()] = "<";
+		lexemes[TokenType.LESS_EQUAL.ordinal()] = "<=";
+
+		// Keywords are spelled like their token type.
+		for (int i = TokenType.AND.ordinal(); i <= TokenType.WHILE.ordinal(); i++) {
+			lexemes[i] = TokenType.values()[i].name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private static void single(char c, TokenType type) {
+		charClasses[c] = SINGLE;
+		singleTokens[c] = type;
+		lexemes[type.ordinal()] = String.valueOf(c);
+	}
+
+	private static byte charClass(char c) {
+		return c < 128 ? charClasses[c] : OTHER;
 	}
 	
-	Scanner(String source) {
+	Scanner(String source, ErrorReporter reporter) {
+		this(source, 0, source.length(), 1, reporter);
+	}
+
+	/**
+	 * Scans the lexemes of the source that start in [from, end), assuming
+	 * 	from is the start of a lexeme on the given line. The last lexeme may
+	 * 	run past end.
+	 */
+	Scanner(String source, int from, int end, int line, ErrorReporter reporter) {
 		this.source = source;
+		this.reporter = reporter;
+		this.end = end;
+		this.current = from;
+		this.line = line;
 	}
 
 	List<Token> scanTokens() {
-		while (!isAtEnd()) {
+		scanRange();
+		tokens.add(new Token(TokenType.EOF, "", null, line));
+		return tokens;
+	}
+
+	// Scans up to end, without the EOF token.
+	List<Token> scanRange() {
+		while (current < end) {
 			// We are at the beginning of the next lexeme.
 			start = current;
 			scanToken();
 		}
 
-		tokens.add(new Token(TokenType.EOF, "", null, line));
 		return tokens;
 	}
 
+	// Where the lexeme after the last one scanned starts.
+	int position() {
+		return current;
+	}
+
 	private void scanToken() {
 		char c = advance();
+
+		switch (charClass(c)) {
+			case SPACE:
+				// Ignore whitespaces.
+				return;
+			case DIGIT:
+				number();
+				return;
+			case ALPHA:
+				identifier();
+				return;
+			case SINGLE:
+				addToken(singleTokens[c]);
+				return;
+		}
 		
 		switch (c) {
-			case '(': addToken(TokenType.LEFT_PAREN); break;
-			case ')': addToken(TokenType.RIGHT_PAREN); break;
-			case '{': addToken(TokenType.LEFT_BRACE); break;
-			case '}': addToken(TokenType.RIGHT_BRACE); break;
-			case ',': addToken(TokenType.COMMA); break;
-			case '.': addToken(TokenType.DOT); break;
-			case '-': addToken(TokenType.MINUS); break;
-			case '+': addToken(TokenType.PLUS); break;
-			case ';': addToken(TokenType.SEMICOLON); break;
-			case '*': addToken(TokenType.STAR); break;
-
-			// Need lookbehind to handle (error out) freefloating ':' without a ternary?
-			case ':': addToken(TokenType.COLON); break;
-			case '?': addToken(TokenType.QUESTIONMARK); break;
-
 			case '!': addToken(match('=') ? TokenType.BANG_EQUAL : TokenType.BANG); break;
 			case '=': addToken(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL); break;
 			case '<': addToken(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS); break;
@@ -92,7 +172,7 @@ class Scanner {
 					  }
 
 					  if (isAtEnd()) {
-						  Lox.error(line, "Unterminated multiline comment block.");
+						  reporter.error(line, "Unterminated multiline comment block.");
 						  break;
 					  }
 
@@ -107,12 +187,6 @@ class Scanner {
 				  }
 				  break;
 
-			case ' ':
-			case '\r':
-			case '\t':
-				  // Ignore whitespaces.
-				  break;
-
 			case '\n':
 				  line++;
 				  break;
@@ -120,15 +194,7 @@ class Scanner {
 			case '"': string(); break;
 
 			default:
-				  // Less tedious than checking for each digit in the root-level switch
-				  // if (isDigit(c)) {
-				  if (isDigit(c)) {
-					  number();
-				  } else if (isAlpha(c)) {
-					  identifier();
-				  } else {
-					  Lox.error(line, "Unexpected character.");
-				  }
+				  reporter.error(line, "Unexpected character.");
 				  break;
 		}
 	}
@@ -138,22 +204,73 @@ class Scanner {
 			advance();
 		}
 
-		String text = source.substring(start, current);
-		TokenType type = keywords.get(text);
+		TokenType type = identifierType();
 
-		if (type == null) {
-			type = TokenType.IDENTIFIER;
+		if (type == TokenType.IDENTIFIER) {
+			// Interned so that variable, field and method lookups keyed by
+			// 	the lexeme hit the identity check in HashMap.
+			String text = StringTable.intern(source, start, current);
+			tokens.add(new Token(TokenType.IDENTIFIER, text, null, line));
+			return;
 		}
 
 		addToken(type);
 	}
 
-	private boolean isAlpha(char c) {
-		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	// A trie over the first letters of the keywords, as in clox's scanner.c.
+	private TokenType identifierType() {
+		switch (source.charAt(start)) {
+			case 'a': return checkKeyword(1, "nd", TokenType.AND);
+			case 'c': return checkKeyword(1, "lass", TokenType.CLASS);
+			case 'e': return checkKeyword(1, "lse", TokenType.ELSE);
+			case 'f':
+				if (current - start > 1) {
+					switch (source.charAt(start + 1)) {
+						case 'a': return checkKeyword(2, "lse", TokenType.FALSE);
+						case 'o': return checkKeyword(2, "r", TokenType.FOR);
+						case 'u': return checkKeyword(2, "n", TokenType.FUN);
+					}
+				}
+				break;
+			case 'i':
+				if (current - start > 1) {
+					switch (source.charAt(start + 1)) {
+						case 'f': return checkKeyword(2, "", TokenType.IF);
+						case 'm': return checkKeyword(2, "port", TokenType.IMPORT);
+					}
+				}
+				break;
+			case 'n': return checkKeyword(1, "il", TokenType.NIL);
+			case 'o': return checkKeyword(1, "r", TokenType.OR);
+			case 'p': return checkKeyword(1, "rint", TokenType.PRINT);
+			case 'r': return checkKeyword(1, "eturn", TokenType.RETURN);
+			case 's': return checkKeyword(1, "uper", TokenType.SUPER);
+			case 't':
+				if (current - start > 1) {
+					switch (source.charAt(start + 1)) {
+						case 'h': return checkKeyword(2, "is", TokenType.THIS);
+						case 'r': return checkKeyword(2, "ue", TokenType.TRUE);
+					}
+				}
+				break;
+			case 'v': return checkKeyword(1, "ar", TokenType.VAR);
+			case 'w': return checkKeyword(1, "hile", TokenType.WHILE);
+		}
+
+		return TokenType.IDENTIFIER;
+	}
+
+	private TokenType checkKeyword(int offset, String rest, TokenType type) {
+		if (current - start == offset + rest.length() && source.startsWith(rest, start + offset)) {
+			return type;
+		}
+
+		return TokenType.IDENTIFIER;
 	}
 
 	private boolean isAlphaNumeric(char c) {
-		return isAlpha(c) || isDigit(c);
+		byte charClass = charClass(c);
+		return charClass == ALPHA || charClass == DIGIT;
 	}
 
 	private void number() {
@@ -176,7 +293,7 @@ class Scanner {
 
 	
 	private boolean isDigit(char c) {
-		return c >= '0' && c <= '9';
+		return charClass(c) == DIGIT;
 	}
 	
 
@@ -190,7 +307,7 @@ class Scanner {
 		}
 		
 		if (isAtEnd()) {
-			Lox.error(line, "Unterminated String.");
+			reporter.error(line, "Unterminated String.");
 			return;
 		}
 
@@ -198,7 +315,7 @@ class Scanner {
 		advance();
 
 		// Trim the surrounding quotes.
-		String value = source.substring(start + 1, current - 1);
+		String value = StringTable.intern(source, start + 1, current - 1);
 
 		addToken(TokenType.STRING, value);
 	}
@@ -242,7 +359,12 @@ class Scanner {
 	}
 
 	private void addToken(TokenType type, Object literal) {
-		String text = source.substring(start, current);
+		String text = lexemes[type.ordinal()];
+
+		if (text == null) {
+			text = source.substring(start, current);
+		}
+
 		tokens.add(new Token(type, text, literal, line));
 	}
 }
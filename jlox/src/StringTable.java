@@ -0,0 +1,163 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The jlox counterpart of clox's {@code vm.strings} table: one canonical
+ * 	instance per distinct string the scanner produces, so that equal literals
+ * 	and identifiers are the same object and compare by identity. Strings built
+ * 	at runtime aren't interned; looking each one up would cost about as much
+ * 	as the comparisons it saves.
+ *
+ * The scanner looks up the text of a token where it sits in the source, and
+ * 	only copies it out and adds an entry when the table doesn't have it yet.
+ *
+ * There is no eviction policy. Entries are weak, so a string no script holds
+ * 	anymore is dropped after the GC clears it, but while the table holds
+ * 	{@link #MAX_ENTRIES} live strings, new ones are simply not interned. Long
+ * 	strings are never interned. Strings that miss the table are still
+ * 	compared by their contents.
+ */
+final class StringTable {
+	static final int MAX_INTERNED_LENGTH = 256;
+	static final int MAX_ENTRIES = 1 << 20;
+
+	private static final ConcurrentHashMap<Object, Entry> strings = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<String> cleared = new ReferenceQueue<>();
+	private static final ThreadLocal<Lookup> lookups = ThreadLocal.withInitial(Lookup::new);
+
+	private StringTable() {}
+
+	// Returns the canonical instance of source.substring(start, end).
+	static String intern(String source, int start, int end) {
+		if (end - start > MAX_INTERNED_LENGTH) {
+			return source.substring(start, end);
+		}
+
+		Lookup lookup = lookups.get();
+		lookup.set(source, start, end);
+		Entry entry = strings.get(lookup);
+		// Don't keep the source alive.
+		lookup.source = null;
+
+		String canonical = entry == null ? null : entry.get();
+
+		if (canonical != null) {
+			return canonical;
+		}
+
+		return add(source.substring(start, end));
+	}
+
+	static int size() {
+		return strings.size();
+	}
+
+	private static String add(String string) {
+		expungeCleared();
+
+		if (strings.size() >= MAX_ENTRIES) {
+			return string;
+		}
+
+		Entry entry = new Entry(string, cleared);
+
+		while (true) {
+			Entry existing = strings.putIfAbsent(entry, entry);
+
+			if (existing == null) {
+				return string;
+			}
+
+			String canonical = existing.get();
+
+			if (canonical != null) {
+				return canonical;
+			}
+
+			// Collected but not yet expunged, replace it.
+			strings.remove(existing, existing);
+		}
+	}
+
+	private static void expungeCleared() {
+		Reference<? extends String> reference;
+
+		while ((reference = cleared.poll()) != null) {
+			strings.remove(reference, reference);
+		}
+	}
+
+	private static final class Entry extends WeakReference<String> {
+		private final int hash;
+
+		Entry(String string, ReferenceQueue<String> queue) {
+			super(string, queue);
+			this.hash = string.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+
+			if (!(other instanceof Entry) || ((Entry)other).hash != hash) {
+				return false;
+			}
+
+			String string = get();
+			return string != null && string.equals(((Entry)other).get());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * A region of a source string to look up without copying it. Only ever
+	 * 	passed to get(), which compares it to the entries, never stored, so
+	 * 	it equals entries without entries equaling it.
+	 */
+	private static final class Lookup {
+		private String source;
+		private int start;
+		private int length;
+		private int hash;
+
+		void set(String source, int start, int end) {
+			this.source = source;
+			this.start = start;
+			this.length = end - start;
+
+			// The same hash String.hashCode() computes for the region.
+			int hash = 0;
+
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + source.charAt(i);
+			}
+
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Entry) || ((Entry)other).hash != hash) {
+				return false;
+			}
+
+			String string = ((Entry)other).get();
+			return string != null && string.length() == length && string.regionMatches(0, source, start, length);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,415 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Flow-sensitive type inference over resolved code. Tracks what each local
+ * 	slot of the current frame is known to hold, through branches and to a
+ * 	fixpoint around loops, and marks the arithmetic and comparisons whose
+ * 	operands are proven to be numbers so the interpreter skips their checks.
+ *
+ * Only locals that no closure captures are tracked. Globals, upvalues,
+ * 	parameters, fields and call results could hold anything.
+ */
+class TypeInferrer implements Expr.Visitor<TypeInferrer.Type>, Stmt.Visitor<Void> {
+	enum Type {
+		NIL,
+		BOOLEAN,
+		NUMBER,
+		STRING,
+		UNKNOWN
+	}
+
+	// What each slot of the current frame holds, null in top-level code.
+	private Type[] slots = null;
+	// The slots of the current frame that closures capture. A closure may
+	// 	assign them during any call, so they always hold UNKNOWN.
+	private boolean[] captured = null;
+
+	// The operations that check their operands' types, in the order they were
+	// 	first inferred, which is where a {@link TypeProfile} keeps their
+	// 	profiles. Loops are inferred several times, each operation is listed once.
+	final List<Expr> operations = new ArrayList<>();
+	private final Set<Expr> listed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	public void infer(List<Stmt> statements) {
+		for (Stmt statement : statements) {
+			infer(statement);
+		}
+
+		// Only now are the loops' last passes done and the annotations final.
+		int proven = 0;
+
+		for (Expr operation : operations) {
+			if (operation instanceof Expr.Binary ? ((Expr.Binary)operation).numeric : ((Expr.Unary)operation).numeric) {
+				proven++;
+			}
+		}
+
+		LoxMetrics.recordInference(operations.size(), proven);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		// Top-level blocks get a frame of their own.
+		if (slots == null) {
+			slots = unknown(stmt.locals);
+			captured = stmt.capturedSlots;
+
+			for (Stmt statement : stmt.statements) {
+				infer(statement);
+			}
+
+			slots = null;
+			captured = null;
+			return null;
+		}
+
+		for (Stmt statement : stmt.statements) {
+			infer(statement);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		if (stmt.superclass != null) {
+			infer(stmt.superclass);
+		}
+
+		assign(stmt.slot, Type.UNKNOWN);
+
+		for (Stmt.Function method : stmt.statics) {
+			inferFunction(method);
+		}
+
+		for (Stmt.Function method : stmt.methods) {
+			inferFunction(method);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		infer(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		assign(stmt.slot, Type.UNKNOWN);
+		inferFunction(stmt);
+		return null;
+	}
+
+	private void inferFunction(Stmt.Function function) {
+		Type[] enclosing = slots;
+		boolean[] enclosingCaptured = captured;
+		slots = unknown(function.locals);
+		captured = function.capturedSlots;
+
+		for (Stmt statement : function.body) {
+			infer(statement);
+		}
+
+		slots = enclosing;
+		captured = enclosingCaptured;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		infer(stmt.condition);
+
+		Type[] before = copy(slots);
+		infer(stmt.thenBranch);
+		Type[] afterThen = slots;
+
+		slots = before;
+
+		if (stmt.elseBranch != null) {
+			infer(stmt.elseBranch);
+		}
+
+		slots = join(afterThen, slots);
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		infer(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value != null) {
+			infer(stmt.value);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		Type type = stmt.initializer != null ? infer(stmt.initializer) : Type.NIL;
+
+		assign(stmt.slot, type);
+		return null;
+	}
+
+	// Goes around the loop until the types at its head stop changing, so the
+	// 	last pass over the body leaves the final annotations.
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		Type[] head = copy(slots);
+
+		while (true) {
+			slots = copy(head);
+			infer(stmt.condition);
+			Type[] exit = copy(slots);
+
+			infer(stmt.body);
+			Type[] next = join(head, slots);
+
+			if (Arrays.equals(next, head)) {
+				slots = exit;
+				return null;
+			}
+
+			head = next;
+		}
+	}
+
+	@Override
+	public Type visitAssignExpr(Expr.Assign expr) {
+		Type type = infer(expr.value);
+
+		if (expr.upvalue == -1) {
+			assign(expr.slot, type);
+		}
+
+		return type;
+	}
+
+	@Override
+	public Type visitBinaryExpr(Expr.Binary expr) {
+		Type left = infer(expr.left);
+		Type right = infer(expr.right);
+		boolean numbers = left == Type.NUMBER && right == Type.NUMBER;
+
+		switch (expr.operator.type) {
+			case COMMA:
+				return right;
+			case BANG_EQUAL:
+			case EQUAL_EQUAL:
+				return Type.BOOLEAN;
+			case GREATER:
+			case GREATER_EQUAL:
+			case LESS:
+			case LESS_EQUAL:
+				check(expr, numbers);
+				return Type.BOOLEAN;
+			case MINUS:
+			case SLASH:
+			case STAR:
+				check(expr, numbers);
+				return Type.NUMBER;
+			case PLUS:
+				check(expr, numbers);
+
+				if (numbers) {
+					return Type.NUMBER;
+				}
+
+				// A string plus a string or a number is a string, or an error.
+				if ((left == Type.STRING || right == Type.STRING) && left != Type.UNKNOWN && right != Type.UNKNOWN) {
+					return Type.STRING;
+				}
+
+				return Type.UNKNOWN;
+		}
+
+		return Type.UNKNOWN;
+	}
+
+	private void check(Expr.Binary expr, boolean numbers) {
+		expr.numeric = numbers;
+
+		if (listed.add(expr)) {
+			expr.operation = operations.size();
+			operations.add(expr);
+		}
+	}
+
+	@Override
+	public Type visitCallExpr(Expr.Call expr) {
+		infer(expr.callee);
+
+		for (Expr argument : expr.arguments) {
+			infer(argument);
+		}
+
+		return Type.UNKNOWN;
+	}
+
+	@Override
+	public Type visitGetExpr(Expr.Get expr) {
+		infer(expr.object);
+		return Type.UNKNOWN;
+	}
+
+	@Override
+	public Type visitGroupingExpr(Expr.Grouping expr) {
+		return infer(expr.expression);
+	}
+
+	@Override
+	public Type visitIndexExpr(Expr.Index expr) {
+		infer(expr.object);
+		infer(expr.index);
+		return Type.UNKNOWN;
+	}
+
+	@Override
+	public Type visitIndexSetExpr(Expr.IndexSet expr) {
+		infer(expr.object);
+		infer(expr.index);
+		return infer(expr.value);
+	}
+
+	@Override
+	public Type visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			return Type.NIL;
+		}
+
+		if (expr.value instanceof Double) {
+			return Type.NUMBER;
+		}
+
+		if (expr.value instanceof Boolean) {
+			return Type.BOOLEAN;
+		}
+
+		return Type.STRING;
+	}
+
+	@Override
+	public Type visitLogicalExpr(Expr.Logical expr) {
+		Type left = infer(expr.left);
+
+		// The right operand may not run at all.
+		Type[] before = copy(slots);
+		Type right = infer(expr.right);
+		slots = join(before, slots);
+
+		return join(left, right);
+	}
+
+	@Override
+	public Type visitSetExpr(Expr.Set expr) {
+		infer(expr.object);
+		return infer(expr.value);
+	}
+
+	@Override
+	public Type visitSuperExpr(Expr.Super expr) {
+		return Type.UNKNOWN;
+	}
+
+	@Override
+	public Type visitThisExpr(Expr.This expr) {
+		return Type.UNKNOWN;
+	}
+
+	@Override
+	public Type visitUnaryExpr(Expr.Unary expr) {
+		Type right = infer(expr.right);
+
+		if (expr.operator.type == TokenType.BANG) {
+			return Type.BOOLEAN;
+		}
+
+		expr.numeric = right == Type.NUMBER;
+
+		if (listed.add(expr)) {
+			expr.operation = operations.size();
+			operations.add(expr);
+		}
+
+		return Type.NUMBER;
+	}
+
+	// The interpreter evaluates all three operands, else branch first.
+	@Override
+	public Type visitConditionalExpr(Expr.Conditional expr) {
+		Type elseType = infer(expr.elseBranch);
+		Type thenType = infer(expr.thenBranch);
+		infer(expr.expression);
+
+		return join(thenType, elseType);
+	}
+
+	@Override
+	public Type visitVariableExpr(Expr.Variable expr) {
+		if (expr.upvalue != -1 || expr.slot == -1) {
+			return Type.UNKNOWN;
+		}
+
+		return slots[expr.slot];
+	}
+
+	private void assign(int slot, Type type) {
+		if (slot != -1) {
+			slots[slot] = captured[slot] ? Type.UNKNOWN : type;
+		}
+	}
+
+	private static Type join(Type a, Type b) {
+		return a == b ? a : Type.UNKNOWN;
+	}
+
+	private static Type[] join(Type[] a, Type[] b) {
+		if (a == null) {
+			return null;
+		}
+
+		Type[] joined = new Type[a.length];
+
+		for (int i = 0; i < a.length; i++) {
+			joined[i] = join(a[i], b[i]);
+		}
+
+		return joined;
+	}
+
+	private static Type[] copy(Type[] types) {
+		return types == null ? null : types.clone();
+	}
+
+	private static Type[] unknown(int size) {
+		Type[] types = new Type[size];
+		Arrays.fill(types, Type.UNKNOWN);
+		return types;
+	}
+
+	private void infer(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private Type infer(Expr expr) {
+		return expr.accept(this);
+	}
+}
@@ -0,0 +1,127 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * The operand types each arithmetic and comparison operation of a script
+ * 	saw at runtime, stored next to the script so that the next run starts
+ * 	warm. Operations are keyed by their position in the program, in the
+ * 	order the {@link TypeInferrer} visits them, and the profile by the hash
+ * 	of the source, so an edited script starts cold again.
+ *
+ * An operation the inferrer couldn't prove numeric but that only ever saw
+ * 	numbers is speculated to: the interpreter tries the numeric case first,
+ * 	guarded by a type check, and falls back to the generic one.
+ *
+ * A profile belongs to one run of one program and keeps its state in arrays
+ * 	indexed by operation, so the shared AST isn't written to. Operations of
+ * 	imported modules and of lazily compiled bodies aren't the program's and
+ * 	aren't profiled. Fibers share the run's profile, and racing updates can
+ * 	lose a type, which at worst makes the next run speculate wrongly and
+ * 	fall back.
+ */
+final class TypeProfile {
+	// What operands an operation saw, as bits.
+	static final int NUMBERS = 1;
+	static final int OTHERS = 2;
+
+	private static final String HEADER = "lox-profile 2 ";
+
+	private final Program program;
+	private final int[] seen;
+	private final boolean[] speculated;
+
+	TypeProfile(Program program) {
+		this.program = program;
+		this.seen = new int[program.operations.size()];
+		this.speculated = new boolean[program.operations.size()];
+	}
+
+	// The profile of "script.lox" is "script.lox.profile".
+	static Path of(Path script) {
+		return script.resolveSibling(script.getFileName() + ".profile");
+	}
+
+	/**
+	 * Starts a profile for a run of the program from the stored one, if there
+	 * 	is one and it was recorded for the same source.
+	 */
+	static TypeProfile load(Path file, String key, Program program) throws IOException {
+		TypeProfile profile = new TypeProfile(program);
+		int speculated = 0;
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			if (!(HEADER + key).equals(reader.readLine())) {
+				return profile;
+			}
+
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				int index = Integer.parseInt(fields[0]);
+
+				if (index < profile.seen.length && profile.speculate(index, Integer.parseInt(fields[1]))) {
+					speculated++;
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// The first run starts cold.
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Malformed type profile " + file + ".");
+		}
+
+		LoxMetrics.recordSpeculation(speculated);
+		return profile;
+	}
+
+	// Stores what the program's operations have seen so far.
+	void save(Path file, String key) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(HEADER + key);
+			writer.newLine();
+
+			for (int i = 0; i < seen.length; i++) {
+				if (seen[i] != 0) {
+					writer.write(i + " " + seen[i]);
+					writer.newLine();
+				}
+			}
+		}
+	}
+
+	// Whether the operation at the given position is speculated to see numbers.
+	boolean isSpeculated(Expr operation, int index) {
+		return index < speculated.length && speculated[index] && program.operations.get(index) == operation;
+	}
+
+	// Records the operand types an operation saw. Only written on a new type.
+	void observe(Expr operation, int index, boolean numbers) {
+		int type = numbers ? NUMBERS : OTHERS;
+
+		if (index < seen.length && (seen[index] & type) == 0 && program.operations.get(index) == operation) {
+			seen[index] |= type;
+		}
+	}
+
+	// Returns whether the operation is now speculated to see numbers.
+	private boolean speculate(int index, int types) {
+		seen[index] |= types;
+		speculated[index] = !numeric(program.operations.get(index)) && seen[index] == NUMBERS;
+		return speculated[index];
+	}
+
+	private static boolean numeric(Expr operation) {
+		if (operation instanceof Expr.Binary) {
+			return ((Expr.Binary)operation).numeric;
+		}
+
+		return ((Expr.Unary)operation).numeric;
+	}
+}
@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * A local variable captured by a closure, like clox's {@code ObjUpvalue}.
+ * 	The first closure to capture a local moves its value into an Upvalue left
+ * 	in the local's slot, and later closures share that same box. Closures
+ * 	hold only the upvalues they use, never the frames they were created in.
+ */
+final class Upvalue {
+	Object value;
+
+	Upvalue(Object value) {
+		this.value = value;
+	}
+}
@@ -15,32 +15,35 @@ public class GenerateAst {
 		String outputDir = args[0];
 
 		defineAst(outputDir, "Expr", Arrays.asList(
-				"Assign: Token name, Expr value",
-				"Binary : Expr left, Token operator, Expr right",
+				"Assign: Token name, Expr value | int slot = -1, int upvalue = -1",
+				"Binary : Expr left, Token operator, Expr right | boolean numeric, int operation",
 				"Call: Expr callee, Token paren, List<Expr> arguments",
 				"Get: Expr object, Token name",
 				"Grouping : Expr expression",
+				"Index: Expr object, Token bracket, Expr index",
+				"IndexSet: Expr object, Token bracket, Expr index, Expr value",
 				"Literal : Object value",
 				"Logical: Expr left, Token operator, Expr right",
 				"Set: Expr object, Token name, Expr value",
-				"Super: Token keyword, Token method",
-				"This: Token keyword",
-				"Unary : Token operator, Expr right",
+				"Super: Token keyword, Token method | int slot = -1, int upvalue = -1, This receiver",
+				"This: Token keyword | int slot = -1, int upvalue = -1",
+				"Unary : Token operator, Expr right | boolean numeric, int operation",
 				"Conditional : Expr expression, Expr thenBranch, Expr elseBranch",
-				"Variable: Token name"
+				"Variable: Token name | int slot = -1, int upvalue = -1"
 			)
 		);
 
 		defineAst(outputDir, "Stmt", Arrays.asList(
-				"Block: List<Stmt> statements",
-				"Class: Token name, Expr.Variable superclass, List<Stmt.Function> methods, List<Stmt.Function> statics",
+				"Block: List<Stmt> statements | int locals, boolean[] capturedSlots",
+				"Class: Token name, Expr.Variable superclass, List<Stmt.Function> methods, List<Stmt.Function> statics | int slot = -1, int superSlot",
 				"Expression: Expr expression",
-				"Function: Token name, List<Token> params, List<Stmt> body",
+				"Function: Token name, List<Token> params, List<Stmt> body | int slot = -1, int locals, boolean[] upvalueIsLocal, int[] upvalueIndexes, LazyBody lazy, boolean pure, List<String> globalsRead, boolean[] capturedSlots",
 				"If: Expr condition, Stmt thenBranch, Stmt elseBranch",
+				"Import: Token keyword, Token path",
 				"Print: Expr expression",
 				"Return: Token keyword, Expr value",
-				"Var: Token name, Expr initializer",
-				"While: Expr condition, Stmt body"
+				"Var: Token name, Expr initializer | int slot = -1",
+				"While: Token keyword, Expr condition, Stmt body"
 			)
 		);
 	}
@@ -62,11 +65,14 @@ public class GenerateAst {
 		defineVisitor(writer, baseName, types);
 		writer.println();
 
-		// The AST classes.
+		// The AST classes. Fields after a '|' are mutable annotations filled
+		// 	in by later passes (e.g. the Resolver) rather than by the parser.
 		for (String type : types) {
 			String className = type.split(":")[0].trim();
-			String fields = type.split(":")[1].trim();
-			defineType(writer, baseName, className, fields);
+			String[] fieldGroups = type.split(":")[1].split("\\|");
+			String fields = fieldGroups[0].trim();
+			String annotations = fieldGroups.length > 1 ? fieldGroups[1].trim() : "";
+			defineType(writer, baseName, className, fields, annotations);
 		}
 
 		writer.println("  abstract <T> T accept(Visitor<T> visitor);");
@@ -94,7 +100,8 @@ public class GenerateAst {
 		PrintWriter writer,
 		String baseName,
 		String className,
-		String fieldList
+		String fieldList,
+		String annotationList
 	) {
 		writer.println(" static class " + className + " extends " + baseName + " {");
 
@@ -123,6 +130,12 @@ public class GenerateAst {
 			writer.println("	final " + field + ";");
 		}
 
+		if (!annotationList.isEmpty()) {
+			for (String annotation : annotationList.split(", ")) {
+				writer.println("	" + annotation + ";");
+			}
+		}
+
 		writer.println(" }");
 		writer.println();
 	}